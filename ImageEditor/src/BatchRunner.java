@@ -0,0 +1,250 @@
+import java.awt.Dimension;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Predicate;
+
+/**
+ * This class runs the same recipe of script commands on many image files.  The recipe is compiled
+ * once (see {@link Script}), and each file is loaded into its own model, edited by the compiled
+ * recipe, and saved under the same name in an output directory.
+ * Files are processed by a fixed number of worker threads, so while some workers read or write
+ * files others are editing, and memory use is bounded by the number of workers.
+ *
+ * <p>Every input file is checked before any work starts, by reading only its header (see
+ * {@link ImageUtil#getDimensions(String)}), so unreadable files are reported straight away.  A file
+ * that fails does not stop the others.  Once every file is done, the number of images and
+ * megapixels processed per second is reported.
+ */
+public class BatchRunner {
+  /**
+   * Default number of worker threads, one per processor.
+   */
+  public static final int DEFAULT_WORKERS = Runtime.getRuntime().availableProcessors();
+  /**
+   * File name extensions of the images found in input directories.
+   */
+  private static final List<String> EXTENSIONS = Arrays.asList("jpg", "jpeg", "png", "gif",
+          "bmp");
+
+  /**
+   * Compiled script commands run on every image.
+   */
+  private final Script recipe;
+  /**
+   * Directory that edited images are saved in.
+   */
+  private final File outputDirectory;
+  /**
+   * Number of worker threads.
+   */
+  private final int workers;
+
+  /**
+   * Construct a batch runner for the given recipe.  The recipe has the same commands as a script
+   * (see the README), except that it cannot load or save images or quit, since the runner does
+   * that, and it cannot set the number of threads, since that setting is shared by every image at
+   * once.
+   *
+   * @param recipe          compiled script commands run on every image
+   * @param outputDirectory directory that edited images are saved in, created if necessary
+   * @param workers         number of images processed at the same time
+   * @throws IllegalArgumentException if workers is less than 1, or the recipe loads or saves
+   *                                  images, quits, or sets the number of threads
+   */
+  public BatchRunner(Script recipe, File outputDirectory, int workers)
+          throws IllegalArgumentException {
+    if (workers < 1) {
+      throw new IllegalArgumentException("Number of workers must be greater than 0.");
+    }
+    if (recipe.uses("load") || recipe.uses("save")) {
+      throw new IllegalArgumentException("Batch recipes cannot load or save images - the batch "
+              + "runner does that.");
+    }
+    if (recipe.uses("quit")) {
+      throw new IllegalArgumentException("Batch recipes cannot quit - the batch runner saves each "
+              + "image after its recipe ends.");
+    }
+    if (recipe.uses("threads")) {
+      throw new IllegalArgumentException("Batch recipes cannot set the number of threads - it is "
+              + "shared by every image being processed.");
+    }
+    this.recipe = recipe;
+    this.outputDirectory = outputDirectory;
+    this.workers = workers;
+  }
+
+  /**
+   * Read and compile a recipe from a script file.
+   *
+   * @param filename path of the script file
+   * @return compiled commands in the file
+   * @throws IOException              if the file cannot be read
+   * @throws IllegalArgumentException if a command in the file is unknown, or has missing or invalid
+   *                                  arguments
+   */
+  public static Script readRecipe(String filename) throws IOException, IllegalArgumentException {
+    return Script.compile(new String(Files.readAllBytes(Paths.get(filename)),
+            StandardCharsets.UTF_8));
+  }
+
+  /**
+   * Find the image files named by the given paths.  A path may name a file, a directory (every
+   * image file directly in it is used), or a glob pattern in its last part, such as
+   * "photos/*.jpg".  Files found in a directory or by a pattern are sorted by name.
+   *
+   * @param paths of files, directories, or patterns
+   * @return image files found, in the order of the paths
+   * @throws IllegalArgumentException if a path names nothing, or a directory cannot be read
+   */
+  public static List<File> findInputs(List<String> paths) throws IllegalArgumentException {
+    List<File> inputs = new ArrayList<>();
+    for (String path : paths) {
+      File file = new File(path);
+      if (file.isFile()) {
+        inputs.add(file);
+      } else if (file.isDirectory()) {
+        inputs.addAll(list(file, name -> EXTENSIONS.contains(extension(name))));
+      } else if (path.matches(".*[*?\\[{].*")) {
+        File parent = file.getAbsoluteFile().getParentFile();
+        PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + file.getName());
+        inputs.addAll(list(parent, name -> matcher.matches(Paths.get(name))));
+      } else {
+        throw new IllegalArgumentException("No such input file: " + path);
+      }
+    }
+    return inputs;
+  }
+
+  /**
+   * Run the recipe on every given image and save the results in the output directory.  Each failed
+   * image is reported with the reason it failed, followed by a summary of the whole batch.
+   *
+   * @param inputs image files to be edited
+   * @param out    stream that failures and the summary are printed to
+   * @return number of images that failed
+   * @throws IOException              if the output directory cannot be created
+   * @throws IllegalArgumentException if two inputs would be saved under the same name
+   */
+  public int run(List<File> inputs, PrintStream out) throws IOException,
+          IllegalArgumentException {
+    // check every input and output before any work starts
+    Map<String, File> outputs = new HashMap<>();
+    for (File input : inputs) {
+      File clash = outputs.put(input.getName(), input);
+      if (clash != null) {
+        throw new IllegalArgumentException("Both " + clash + " and " + input + " would be saved as "
+                + input.getName() + ".");
+      }
+    }
+    List<File> valid = new ArrayList<>();
+    List<Long> sizes = new ArrayList<>();
+    int failures = 0;
+    for (File input : inputs) {
+      try {
+        Dimension size = ImageUtil.getDimensions(input.getPath());
+        valid.add(input);
+        sizes.add((long) size.width * size.height);
+      } catch (IOException e) {
+        out.println(input + ": " + e.getMessage());
+        failures++;
+      }
+    }
+    Files.createDirectories(outputDirectory.toPath());
+
+    long pixels = 0;
+    long start = System.nanoTime();
+    ExecutorService pool = Executors.newFixedThreadPool(workers);
+    try {
+      List<Future<?>> results = new ArrayList<>();
+      for (File input : valid) {
+        File output = new File(outputDirectory, input.getName());
+        results.add(pool.submit(() -> {
+          process(input, output);
+          return null;
+        }));
+      }
+      for (int i = 0; i < results.size(); i++) {
+        try {
+          results.get(i).get();
+          pixels += sizes.get(i);
+        } catch (ExecutionException e) {
+          out.println(valid.get(i) + ": " + e.getCause().getMessage());
+          failures++;
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Batch interrupted.", e);
+    } finally {
+      pool.shutdownNow();
+    }
+    double seconds = Math.max(1e-9, (System.nanoTime() - start) / 1e9);
+    int done = inputs.size() - failures;
+    out.println(String.format(Locale.ROOT, "Processed %d of %d images (%.1f megapixels) in %.2f s: "
+            + "%.1f images/s, %.1f megapixels/s", done, inputs.size(), pixels / 1e6, seconds,
+            done / seconds, pixels / 1e6 / seconds));
+    return failures;
+  }
+
+  /**
+   * Load one image into a model of its own, run the recipe on it, and save the result.  Undo
+   * history is turned off, since nothing is undone, and the model is lazy, so the edits are only
+   * done when the result is saved.
+   *
+   * @param input  image file to be edited
+   * @param output file the edited image is saved to
+   * @throws IOException if the image cannot be read or written
+   */
+  private void process(File input, File output) throws IOException {
+    IModel model = new Model();
+    model.setHistoryLimits(0, 0);
+    model.setLazy(true);
+    model.loadImage(ImageUtil.loadImage(input.getPath()));
+    recipe.run(model);
+    ImageUtil.writeImage(model.getImage(), output.getPath());
+  }
+
+  /**
+   * List the files directly in a directory whose names are accepted, sorted by name.
+   *
+   * @param directory to be listed
+   * @param filter    of file names
+   * @return files found
+   * @throws IllegalArgumentException if the directory cannot be read
+   */
+  private static List<File> list(File directory, Predicate<String> filter)
+          throws IllegalArgumentException {
+    File[] files = directory.listFiles(file -> file.isFile() && filter.test(file.getName()));
+    if (files == null) {
+      throw new IllegalArgumentException("Cannot read directory: " + directory);
+    }
+    Arrays.sort(files);
+    return Arrays.asList(files);
+  }
+
+  /**
+   * Return the extension of a file name in lower case.
+   *
+   * @param name of the file
+   * @return extension without the dot, or an empty string if there is none
+   */
+  private static String extension(String name) {
+    return name.substring(name.lastIndexOf('.') + 1).toLowerCase(Locale.ROOT);
+  }
+}
@@ -0,0 +1,51 @@
+/**
+ * This class represents an ordered dither operation with a Bayer matrix.  A Bayer matrix orders
+ * its thresholds so that each threshold is as far as possible from the ones before it, which gives
+ * a regular cross-hatched pattern of dots.  Larger matrices can show more shades of grey.
+ */
+public class BayerDither extends ThresholdDither {
+  /**
+   * Largest supported width and height of the matrix.
+   */
+  public static final int MAX_SIZE = 256;
+
+  /**
+   * Construct an ordered dither with a Bayer matrix of the given width and height.
+   *
+   * @param size width and height of the matrix, a power of 2 from 2 to 256
+   * @throws IllegalArgumentException if size is not a power of 2 from 2 to 256
+   */
+  public BayerDither(int size) throws IllegalArgumentException {
+    super(size, ranks(size));
+  }
+
+  /**
+   * Build the ranks of a Bayer matrix of the given size.  Each matrix is made from the matrix of
+   * half its size, repeated in the four quarters with the ranks of each quarter interleaved.
+   *
+   * @param size width and height of the matrix
+   * @return rank of each position of the matrix, in row-major order
+   * @throws IllegalArgumentException if size is not a power of 2 from 2 to 256
+   */
+  private static int[] ranks(int size) throws IllegalArgumentException {
+    if (size < 2 || size > MAX_SIZE || Integer.bitCount(size) != 1) {
+      throw new IllegalArgumentException("Bayer matrix size must be a power of 2 from 2 to "
+              + MAX_SIZE + ".");
+    }
+    int[] ranks = {0};
+    for (int n = 1; n < size; n *= 2) {
+      int[] next = new int[4 * n * n];
+      for (int r = 0; r < n; r++) {
+        for (int c = 0; c < n; c++) {
+          int rank = 4 * ranks[r * n + c];
+          next[r * 2 * n + c] = rank;
+          next[r * 2 * n + c + n] = rank + 2;
+          next[(r + n) * 2 * n + c] = rank + 3;
+          next[(r + n) * 2 * n + c + n] = rank + 1;
+        }
+      }
+      ranks = next;
+    }
+    return ranks;
+  }
+}
@@ -0,0 +1,174 @@
+import java.util.Random;
+
+/**
+ * This class represents an ordered dither operation with a blue-noise threshold map.  A blue-noise
+ * map spreads its thresholds evenly without any regular pattern, so the dots look like those of
+ * error diffusion but every pixel can still be processed independently.
+ *
+ * <p>The map is built once with the void-and-cluster method and then shared by every blue-noise
+ * dither.  Points are added to and removed from a binary pattern one at a time, always filling the
+ * largest empty area or emptying the tightest cluster, and the order of the points gives the ranks.
+ * Closeness is measured by a Gaussian that wraps around the edges of the map, so the map tiles
+ * without seams.  The random starting pattern uses a fixed seed, so the map is always the same.
+ */
+public class BlueNoiseDither extends ThresholdDither {
+  /**
+   * Width and height of the map.
+   */
+  private static final int SIZE = 64;
+  /**
+   * Spread of the Gaussian used to measure how crowded each position is.
+   */
+  private static final double SIGMA = 1.5;
+  /**
+   * Seed of the random starting pattern.
+   */
+  private static final long RANDOM_SEED = 1;
+  /**
+   * Ranks of the map, built when first needed.
+   */
+  private static int[] map;
+
+  /**
+   * Construct an ordered dither with the blue-noise threshold map.
+   */
+  public BlueNoiseDither() {
+    super(SIZE, getMap());
+  }
+
+  /**
+   * Return the ranks of the map, building them if necessary.
+   *
+   * @return rank of each position of the map, in row-major order
+   */
+  private static synchronized int[] getMap() {
+    if (map == null) {
+      map = buildMap();
+    }
+    return map;
+  }
+
+  /**
+   * Build the ranks of the map with the void-and-cluster method.
+   *
+   * @return rank of each position of the map, in row-major order
+   */
+  private static int[] buildMap() {
+    int count = SIZE * SIZE;
+    double[] kernel = kernel();
+    // start from a random pattern with a tenth of the positions set
+    boolean[] prototype = new boolean[count];
+    double[] energy = new double[count];
+    Random random = new Random(RANDOM_SEED);
+    int initial = count / 10;
+    for (int placed = 0; placed < initial; ) {
+      int position = random.nextInt(count);
+      if (!prototype[position]) {
+        prototype[position] = true;
+        spread(energy, kernel, position, 1);
+        placed++;
+      }
+    }
+    // move the point of the tightest cluster into the largest void until it would not move
+    while (true) {
+      int cluster = extreme(prototype, energy, true, true);
+      prototype[cluster] = false;
+      spread(energy, kernel, cluster, -1);
+      int vacancy = extreme(prototype, energy, false, false);
+      prototype[vacancy] = true;
+      spread(energy, kernel, vacancy, 1);
+      if (vacancy == cluster) {
+        break;
+      }
+    }
+    int[] ranks = new int[count];
+    // rank the starting points by removing them from the tightest cluster first
+    boolean[] pattern = prototype.clone();
+    double[] working = energy.clone();
+    for (int ones = initial; ones > 0; ones--) {
+      int cluster = extreme(pattern, working, true, true);
+      pattern[cluster] = false;
+      spread(working, kernel, cluster, -1);
+      ranks[cluster] = ones - 1;
+    }
+    // rank the next points up to half of the map by filling the largest void first
+    int ones = initial;
+    for (; ones < count / 2; ones++) {
+      int vacancy = extreme(prototype, energy, false, false);
+      prototype[vacancy] = true;
+      spread(energy, kernel, vacancy, 1);
+      ranks[vacancy] = ones;
+    }
+    // rank the rest by filling the tightest cluster of the remaining empty positions first
+    double[] empty = new double[count];
+    for (int position = 0; position < count; position++) {
+      if (!prototype[position]) {
+        spread(empty, kernel, position, 1);
+      }
+    }
+    for (; ones < count; ones++) {
+      int cluster = extreme(prototype, empty, false, true);
+      prototype[cluster] = true;
+      spread(empty, kernel, cluster, -1);
+      ranks[cluster] = ones;
+    }
+    return ranks;
+  }
+
+  /**
+   * Build the Gaussian weight of every offset within the map, wrapping around its edges.
+   *
+   * @return weight of each offset, in row-major order
+   */
+  private static double[] kernel() {
+    double[] kernel = new double[SIZE * SIZE];
+    for (int r = 0; r < SIZE; r++) {
+      int dr = Math.min(r, SIZE - r);
+      for (int c = 0; c < SIZE; c++) {
+        int dc = Math.min(c, SIZE - c);
+        kernel[r * SIZE + c] = Math.exp(-(dr * dr + dc * dc) / (2 * SIGMA * SIGMA));
+      }
+    }
+    return kernel;
+  }
+
+  /**
+   * Add the weight of a point at the given position to the energy of every position.
+   *
+   * @param energy   energy of each position
+   * @param kernel   weight of each offset
+   * @param position of the point
+   * @param sign     1 to add the point, -1 to remove it
+   */
+  private static void spread(double[] energy, double[] kernel, int position, int sign) {
+    int row = position / SIZE;
+    int column = position % SIZE;
+    for (int r = 0; r < SIZE; r++) {
+      int kernelRow = ((r - row + SIZE) % SIZE) * SIZE;
+      for (int c = 0; c < SIZE; c++) {
+        energy[r * SIZE + c] += sign * kernel[kernelRow + (c - column + SIZE) % SIZE];
+      }
+    }
+  }
+
+  /**
+   * Return the position with the highest or lowest energy among the positions that are set or
+   * not set.  Ties go to the first position in row-major order.
+   *
+   * @param pattern which positions are set
+   * @param energy  energy of each position
+   * @param set     true to search the set positions, false to search the others
+   * @param highest true to find the highest energy, false to find the lowest
+   * @return the position found
+   */
+  private static int extreme(boolean[] pattern, double[] energy, boolean set, boolean highest) {
+    int best = -1;
+    for (int position = 0; position < pattern.length; position++) {
+      if (pattern[position] == set && (best < 0
+              || (highest ? energy[position] > energy[best] : energy[position] < energy[best]))) {
+        best = position;
+      }
+    }
+    return best;
+  }
+}
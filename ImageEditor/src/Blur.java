@@ -1,7 +1,8 @@
 /**
  * This class can be used to blur an image. Because this is an operation on an image it implements
- * the ImageEditor interface. A blur is a type of filter and thus extends the Filter class. A blur
- * is done using a 3x3 filter.
+ * the ImageEditor interface. A blur is a type of filter and thus extends the Filter class. By
+ * default a blur is done using a 3x3 filter.  A blur can also be done with a Gaussian filter of a
+ * given radius, which blurs more strongly as the radius grows.
  */
 public class Blur extends Filter {
 
@@ -12,6 +13,33 @@ public class Blur extends Filter {
                                      {(1.0 / 8.0), (1.0 / 4.0), (1.0 / 8.0)},
                                      {(1.0 / 16.0), (1.0 / 8.0), (1.0 / 16.0)}};
 
+  /**
+   * One-dimensional Gaussian kernel used for both passes of a radius blur, or null to blur with
+   * the 3x3 matrix.
+   */
+  private final double[] kernel;
+
+  /**
+   * Construct a blur that uses the 3x3 filter.
+   */
+  public Blur() {
+    this.kernel = null;
+  }
+
+  /**
+   * Construct a Gaussian blur of the given radius.  The kernel is (2 * radius + 1) pixels wide and
+   * high and uses a standard deviation of half the radius.
+   *
+   * @param radius of the blur in pixels
+   * @throws IllegalArgumentException if the radius is less than 1
+   */
+  public Blur(int radius) throws IllegalArgumentException {
+    if (radius < 1) {
+      throw new IllegalArgumentException("Blur radius must be greater than 0");
+    }
+    this.kernel = gaussian(radius);
+  }
+
   /**
    * Do a blur operation on a provided image.
    *
@@ -19,6 +47,29 @@ public class Blur extends Filter {
    * @return the blurred image as represented by an Image object
    */
   public Image edit(Image i) {
-    return super.filter(i, this.matrix);
+    if (kernel == null) {
+      return super.filter(i, this.matrix);
+    }
+    return super.filter(i, this.kernel, this.kernel);
+  }
+
+  /**
+   * Build a normalized one-dimensional Gaussian kernel of the given radius.
+   *
+   * @param radius of the kernel
+   * @return kernel of length (2 * radius + 1) whose entries sum to 1
+   */
+  private static double[] gaussian(int radius) {
+    double sigma = radius / 2.0;
+    double[] weights = new double[2 * radius + 1];
+    double total = 0;
+    for (int i = -radius; i <= radius; i++) {
+      weights[i + radius] = Math.exp(-(i * i) / (2 * sigma * sigma));
+      total += weights[i + radius];
+    }
+    for (int i = 0; i < weights.length; i++) {
+      weights[i] /= total;
+    }
+    return weights;
   }
 }
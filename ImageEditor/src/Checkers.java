@@ -13,10 +13,7 @@ public class Checkers implements Generator {
    *                                  one pixel wide
    */
   public Image generate(int size) throws IllegalArgumentException {
-    if (size < 1) {
-      System.out.println(size);
-      throw new IllegalArgumentException("Size must be a positive number");
-    }
+    checkSize(size);
     int width = size * 8;
     int[][][] pixels = new int[width][width][3];
     ColorRGB color;
@@ -51,4 +48,18 @@ public class Checkers implements Generator {
     }
 
   }
+
+  /**
+   * Checks that a checkerboard with tiles of the given size can be generated, so that a size can
+   * be checked before the checkerboard is generated.
+   *
+   * @param size the size (in pixels) of each individual tile's width and height
+   * @throws IllegalArgumentException if the size is less than 1 because each tile must be at least
+   *                                  one pixel wide
+   */
+  public static void checkSize(int size) throws IllegalArgumentException {
+    if (size < 1) {
+      throw new IllegalArgumentException("Size must be a positive number");
+    }
+  }
 }
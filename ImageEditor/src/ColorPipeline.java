@@ -0,0 +1,72 @@
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * This class represents a sequence of color transformations applied to an image in a single pass.
+ * Running color transformations one after another makes a full pass and a full intermediate image
+ * for each of them.  A pipeline instead takes each pixel through every transformation in turn and
+ * writes only the final image.  Each transformation still rounds and clamps its own result, so the
+ * output is identical to applying the transformations one at a time.
+ */
+public class ColorPipeline implements ImageEditor {
+  /**
+   * Transformations in the order they are applied.
+   */
+  private final List<TransformColor> transforms;
+  /**
+   * Tables of the transformations in the order they are applied.
+   */
+  private final List<ColorTable> tables = new ArrayList<>();
+
+  /**
+   * Construct a pipeline from color transformations in the order they should be applied.
+   *
+   * @param transforms color transformations to be applied
+   * @throws IllegalArgumentException if no transformations are given
+   */
+  public ColorPipeline(List<TransformColor> transforms) throws IllegalArgumentException {
+    if (transforms.isEmpty()) {
+      throw new IllegalArgumentException("A color pipeline needs at least one transformation.");
+    }
+    this.transforms = Collections.unmodifiableList(new ArrayList<>(transforms));
+    for (TransformColor transform : transforms) {
+      tables.add(new ColorTable(transform.getMatrix()));
+    }
+  }
+
+  /**
+   * Return the transformations of this pipeline, so that it can be joined with others.
+   *
+   * @return unmodifiable list of transformations in the order they are applied
+   */
+  public List<TransformColor> getTransforms() {
+    return transforms;
+  }
+
+  /**
+   * Apply every transformation of this pipeline to the given image.  Returns a new image.
+   *
+   * @param image to be edited.
+   * @return new transformed image.
+   */
+  public Image edit(Image image) {
+    int width = image.getWidth();
+    int height = image.getHeight();
+    int[] pixels = new int[width * height];
+    IntBuffer input = image.getPixelView();
+    ColorTable[] stages = tables.toArray(new ColorTable[0]);
+    Progress.current().expect(height);
+    RowBands.forEach(height, (index, startRow, endRow) -> {
+      for (int i = startRow * width; i < endRow * width; i++) {
+        int pixel = input.get(i);
+        for (ColorTable stage : stages) {
+          pixel = stage.apply(pixel);
+        }
+        pixels[i] = pixel;
+      }
+    });
+    return new Image(width, height, pixels);
+  }
+}
@@ -31,4 +31,13 @@ public enum ColorRGB {
   public int[] getRGB() {
     return rgb.clone();
   }
+
+  /**
+   * Return the rgb value for a specified color packed into a single pixel integer.
+   *
+   * @return the packed rgb value for a color
+   */
+  public int getPacked() {
+    return Image.pack(rgb[0], rgb[1], rgb[2]);
+  }
 }
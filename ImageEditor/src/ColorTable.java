@@ -0,0 +1,120 @@
+/**
+ * This class represents a linear color transformation prepared for fast repeated use.  For each
+ * output channel and each input channel, the product of the matrix coefficient and every possible
+ * 8-bit input value is precomputed as a 32.32 fixed-point integer.  Transforming a pixel is then
+ * nine table lookups and integer additions.
+ *
+ * <p>Results match rounding and clamping the floating-point dot product exactly.  The fixed-point
+ * sum is within a few units of the true value, so whenever it lands close enough to a rounding
+ * boundary that the two could disagree, the channel is recomputed in floating point instead.
+ */
+public class ColorTable {
+  /**
+   * Number of fraction bits in the fixed-point table entries.
+   */
+  private static final int SHIFT = 32;
+  /**
+   * One half in fixed point, added before truncating to round to nearest.
+   */
+  private static final long HALF = 1L << (SHIFT - 1);
+  /**
+   * Mask selecting the fraction bits of a fixed-point value.
+   */
+  private static final long FRACTION = (1L << SHIFT) - 1;
+  /**
+   * Distance from a rounding boundary, in fixed-point units, inside which a channel is recomputed
+   * in floating point.  This is far larger than the error of the fixed-point sum.
+   */
+  private static final long MARGIN = 1L << 8;
+  /**
+   * Largest coefficient magnitude that can be tabulated without overflowing a long.
+   */
+  private static final double LIMIT = 1 << 20;
+
+  /**
+   * Matrix of the transformation, used to recompute channels near rounding boundaries.
+   */
+  private final double[][] matrix;
+  /**
+   * Fixed-point products, indexed by ((output channel * 3 + input channel) * 256 + input value),
+   * or null if the matrix cannot be tabulated.
+   */
+  private final long[] table;
+
+  /**
+   * Construct a table for the given 3x3 color transformation matrix.  Row k of the matrix holds
+   * the coefficients of the red, green, and blue input channels for output channel k.
+   *
+   * @param matrix of the color transformation
+   */
+  public ColorTable(double[][] matrix) {
+    this.matrix = new double[3][];
+    boolean fits = true;
+    for (int k = 0; k < 3; k++) {
+      this.matrix[k] = matrix[k].clone();
+      for (int c = 0; c < 3; c++) {
+        fits &= Math.abs(matrix[k][c]) < LIMIT;
+      }
+    }
+    if (!fits) {
+      this.table = null;
+      return;
+    }
+    this.table = new long[9 * 256];
+    for (int k = 0; k < 3; k++) {
+      for (int c = 0; c < 3; c++) {
+        for (int v = 0; v < 256; v++) {
+          table[(k * 3 + c) * 256 + v] = Math.round(Math.scalb(matrix[k][c] * v, SHIFT));
+        }
+      }
+    }
+  }
+
+  /**
+   * Transform one packed pixel.
+   *
+   * @param pixel packed pixel to be transformed
+   * @return packed transformed pixel
+   */
+  public int apply(int pixel) {
+    int red = Image.red(pixel);
+    int green = Image.green(pixel);
+    int blue = Image.blue(pixel);
+    return Image.pack(channel(0, red, green, blue), channel(1, red, green, blue),
+            channel(2, red, green, blue));
+  }
+
+  /**
+   * Transform one channel of one packed pixel.
+   *
+   * @param pixel packed pixel to be transformed
+   * @param k     output channel (0 for red, 1 for green, 2 for blue)
+   * @return new channel value (0-255)
+   */
+  public int apply(int pixel, int k) {
+    return channel(k, Image.red(pixel), Image.green(pixel), Image.blue(pixel));
+  }
+
+  /**
+   * Calculate one channel of a transformed pixel as the clamped, rounded linear combination of the
+   * original channel values.
+   *
+   * @param k     output channel (0 for red, 1 for green, 2 for blue)
+   * @param red   channel value of the original pixel
+   * @param green channel value of the original pixel
+   * @param blue  channel value of the original pixel
+   * @return new channel value (0-255)
+   */
+  private int channel(int k, int red, int green, int blue) {
+    if (table != null) {
+      int base = k * 768;
+      long sum = table[base + red] + table[base + 256 + green] + table[base + 512 + blue] + HALF;
+      long fraction = sum & FRACTION;
+      if (fraction >= MARGIN && fraction <= FRACTION - MARGIN) {
+        return ImageUtil.clamp((int) Math.max(-1, Math.min(256, sum >> SHIFT)));
+      }
+    }
+    double[] row = matrix[k];
+    return ImageUtil.clamp((int) Math.round((red * row[0]) + (green * row[1]) + (blue * row[2])));
+  }
+}
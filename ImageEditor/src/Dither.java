@@ -1,53 +1,84 @@
+import java.nio.IntBuffer;
+
 /**
  * This class represent a Dither operation. Because this is an operation on an image it implements
  * the ImageEditor interface. This operation breaks down an image that has many colors into an image
  * that is made of dots from just a few colors. This particular implementation also makes the image
  * a black and white dithered image.
+ *
+ * <p>Rows are dithered in parallel as a wavefront (see {@link Wavefront}), with each row two pixels
+ * behind the row above.  Every pixel still receives its diffused error in the same order as when
+ * dithering one pixel at a time, so the result does not depend on the number of threads.
  */
 public class Dither implements ImageEditor {
   /**
    * Create a dot-matrixed greyscale image by first converting the image to greyscale and then
-   * dithering it according to the Floyd-Steinberg algorithm.
+   * dithering it according to the Floyd-Steinberg algorithm.  The grey value of each pixel is
+   * calculated as the pixel is reached, and the diffused error is kept for only the rows in
+   * progress, so the dithered image is the only full-size array created.
    *
    * @param image to be edited.
    * @return an image object of a greyscale, dithered object
    */
   public Image edit(Image image) {
-    // transform into greyscale
-    TransformColor gs = new GreyScale();
-    Image grey = gs.edit(image);
-    // get original image rgb values
-    int[][][] rgb = grey.getRgb();
-    // loop through each pixel and perform the Floyd-Steinberg algorithm
-    for (int r = 0; r < image.getHeight(); r++) {
-      for (int c = 0; c < image.getWidth(); c++) {
-        int oldColor = rgb[r][c][0];
+    int width = image.getWidth();
+    int height = image.getHeight();
+    IntBuffer input = image.getPixelView();
+    // greyscale transformation, of which only the red channel is used
+    ColorTable grey = new ColorTable(new GreyScale().getMatrix());
+    // each thread works on one row and diffuses error into the row below, so one more row of
+    // error than there are threads is in use at any time; a row's error is cleared as it is read,
+    // so the row is ready for reuse once it is finished
+    int threads = Wavefront.count(height);
+    int[][] errors = new int[threads + 1][width];
+    int[] pixels = new int[width * height];
+    // perform the Floyd-Steinberg algorithm on each row, letting rows run in parallel as soon as
+    // the row above has moved past every pixel that diffuses error into the next pixel
+    Progress.current().expect(height);
+    Wavefront.forEach(height, width, 2, threads, (r, startColumn, endColumn) -> {
+      int[] current = errors[r % errors.length];
+      int[] below = r + 1 < height ? errors[(r + 1) % errors.length] : null;
+      for (int c = startColumn; c < endColumn; c++) {
+        int index = r * width + c;
+        int oldColor = grey.apply(input.get(index), 0) + current[c];
+        current[c] = 0;
         int newColor = findClosestColor(oldColor);
-        int error = oldColor - newColor;
-        for (int k = 0; k < 3; k++) {
-          rgb[r][c][k] = newColor;
-        }
-
-        if (c + 1 < image.getWidth()) {
-          rgb[r][c + 1][0] = (int) Math.round(rgb[r][c + 1][0] + (7 / 16.0) * error);
-        }
+        pixels[index] = Image.pack(newColor, newColor, newColor);
+        diffuse(current, below, width, c, oldColor - newColor);
+      }
+    });
 
-        if (r + 1 < image.getHeight() && c - 1 >= 0) {
-          rgb[r + 1][c - 1][0] = (int) Math.round(rgb[r + 1][c - 1][0] + (3 / 16.0) * error);
-        }
+    return new Image(width, height, pixels);
+  }
 
-        if (r + 1 < image.getHeight()) {
-          rgb[r + 1][c][0] = (int) Math.round(rgb[r + 1][c][0] + (5 / 16.0) * error);
-        }
+  /**
+   * Spread the difference between a pixel and its closest color to the neighbouring pixels that
+   * have not been processed yet, following the Floyd-Steinberg algorithm.  Each share is rounded
+   * on its own before it is added, which gives the same grey values as rounding the running total
+   * because the total is always a whole number.
+   *
+   * @param current error of each pixel in the row of the pixel
+   * @param below   error of each pixel in the row below, or null if this is the last row
+   * @param width   of the image
+   * @param c       column of the pixel
+   * @param error   difference between the pixel and its closest color
+   */
+  private void diffuse(int[] current, int[] below, int width, int c, int error) {
+    if (c + 1 < width) {
+      current[c + 1] += (int) Math.round((7 / 16.0) * error);
+    }
 
-        if (r + 1 < image.getHeight() && c + 1 < image.getWidth()) {
-          rgb[r + 1][c + 1][0] = (int) Math.round(rgb[r + 1][c + 1][0] + (1 / 16.0) * error);
-        }
+    if (below != null && c - 1 >= 0) {
+      below[c - 1] += (int) Math.round((3 / 16.0) * error);
+    }
 
-      }
+    if (below != null) {
+      below[c] += (int) Math.round((5 / 16.0) * error);
     }
 
-    return new Image(rgb);
+    if (below != null && c + 1 < width) {
+      below[c + 1] += (int) Math.round((1 / 16.0) * error);
+    }
   }
 
   /**
@@ -1,9 +1,17 @@
+import java.nio.IntBuffer;
+
 /**
  * This class represents a filter operation on an image. A filter operation overlays a kernel (an
  * array of 2D array of numbers having odd dimensions) on each pixel of the image and uses the
  * kernel to calculate new channel values for each pixel.  This results in a image with a different
  * appearance.  Examples of filter operations include blurring or sharpening an image.  This class
  * is abstract and implements the ImageEditor interface.
+ *
+ * <p>Kernels may be of any odd size.  A kernel that is separable (the outer product of a column
+ * vector and a row vector, such as a Gaussian blur) is applied as a horizontal pass followed by a
+ * vertical pass, which costs (height + width) multiplications per pixel instead of
+ * (height * width).
+ * Bands of rows are filtered in parallel (see {@link RowBands}).
  */
 public abstract class Filter implements ImageEditor {
   /**
@@ -12,80 +20,221 @@ public abstract class Filter implements ImageEditor {
    * for that pixel and channel. This is done by placing the center of the kernel at a particular
    * pixel and the result of the filter is calculated by multiplying together corresponding numbers
    * in the kernel and the pixels and adding them. If the portions of the kernel do not overlap any
-   * pixels, those pixels are not included in the computation.
+   * pixels, those pixels are not included in the computation.  Separable kernels are detected and
+   * applied in two one-dimensional passes.
    *
    * @param image  the image the filter operation should be done on
    * @param matrix the kernel for the operation
    * @return an image object containing the data of the filtered image
    */
   public Image filter(Image image, double[][] matrix) {
-    int[][][] pixels = new int[image.getHeight()][image.getWidth()][3];
-    int[][][] inputRgb = image.getRgb();
-    for (int i = 0; i < image.getHeight(); i++) {
-      for (int j = 0; j < image.getWidth(); j++) {
-        for (int k = 0; k < 3; k++) {
-          int result = getValue(i, j, k, inputRgb, matrix);
-          result = ImageUtil.clamp(result);
-          pixels[i][j][k] = result;
-        }
-      }
+    double[][] factors = separate(matrix);
+    if (factors != null) {
+      return filter(image, factors[0], factors[1]);
     }
-    return new Image(pixels);
+    int width = image.getWidth();
+    int height = image.getHeight();
+    int[] pixels = new int[width * height];
+    IntBuffer input = image.getPixelView();
+    Progress.current().expect(height);
+    RowBands.forEach(height, (index, startRow, endRow) ->
+            filterRows(input, width, height, matrix, pixels, startRow, endRow));
+    return new Image(width, height, pixels);
+  }
+
+  /**
+   * Filter an image with a separable kernel.  The kernel is the outer product of the given column
+   * and row vectors (kernel[i][j] = column[i] * row[j]), both of which must have odd length.  Each
+   * row of the image is first filtered with the row vector, and the results are then filtered down
+   * each column with the column vector.  As with a full kernel, portions of the kernel that do not
+   * overlap any pixels are not included in the computation.
+   *
+   * @param image  the image the filter operation should be done on
+   * @param column vertical factor of the kernel
+   * @param row    horizontal factor of the kernel
+   * @return an image object containing the data of the filtered image
+   */
+  public Image filter(Image image, double[] column, double[] row) {
+    int width = image.getWidth();
+    int height = image.getHeight();
+    int[] pixels = new int[width * height];
+    IntBuffer input = image.getPixelView();
+    Progress.current().expect(height);
+    RowBands.forEach(height, (index, startRow, endRow) ->
+            filterRows(input, width, height, column, row, pixels, startRow, endRow));
+    return new Image(width, height, pixels);
   }
 
   /**
-   * Calculates the value of the filter operation for the specified pixel (row, column, channel) of
-   * the original image. This is done by placing the center of the kernel at a particular pixel and
-   * the result of the filter is calculated by multiplying together corresponding numbers in the
-   * kernel and the pixels and adding them. If the portions of the kernel do not overlap any pixels,
-   * those pixels are not included in the computation.
+   * Apply a full kernel to the rows from startRow (inclusive) to endRow (exclusive) of an image and
+   * write the packed results into the output array.  For every pixel the kernel is clipped to the
+   * image bounds once, and the three channels are accumulated together.
    *
-   * @param row     row of the original pixel
-   * @param column  column of the original pixel
-   * @param channel channel of the original pixel
-   * @param rgb     an array of rgb values of the original image
-   * @param matrix  the kernel matrix of the filter being performed
-   * @return the value for the specified pixel once the filter has been applied
+   * @param input    read-only view of the packed pixels of the original image
+   * @param width    of the original image
+   * @param height   of the original image
+   * @param matrix   the kernel matrix of the filter being performed
+   * @param output   packed pixels of the filtered image
+   * @param startRow first row to filter
+   * @param endRow   row after the last row to filter
    */
-  private int getValue(int row, int column, int channel, int[][][] rgb, double[][] matrix) {
-    double sum = 0;
-    int imageHeight = rgb.length;
-    int imageWidth = rgb[0].length;
+  private void filterRows(IntBuffer input, int width, int height, double[][] matrix, int[] output,
+                          int startRow, int endRow) {
     int matrixHeight = matrix.length;
     int matrixWidth = matrix[0].length;
-    int mid = matrixWidth / 2;
-    for (int i = 0; i < matrixHeight; i++) {
-      for (int j = 0; j < matrixWidth; j++) {
-        int imageRow = getColumnOrRow(i, row, mid);
-        int imageColumn = getColumnOrRow(j, column, mid);
-        if (imageRow >= 0 && imageRow < imageHeight && imageColumn >= 0
-                && imageColumn < imageWidth) {
-          sum += matrix[i][j] * rgb[imageRow][imageColumn][channel];
+    int midRow = matrixHeight / 2;
+    int midColumn = matrixWidth / 2;
+    for (int i = startRow; i < endRow; i++) {
+      // kernel rows that overlap the image for this row
+      int top = Math.max(0, midRow - i);
+      int bottom = Math.min(matrixHeight, height - i + midRow);
+      for (int j = 0; j < width; j++) {
+        // kernel columns that overlap the image for this column
+        int left = Math.max(0, midColumn - j);
+        int right = Math.min(matrixWidth, width - j + midColumn);
+        double red = 0;
+        double green = 0;
+        double blue = 0;
+        for (int ki = top; ki < bottom; ki++) {
+          int offset = (i - midRow + ki) * width + j - midColumn;
+          for (int kj = left; kj < right; kj++) {
+            int pixel = input.get(offset + kj);
+            double factor = matrix[ki][kj];
+            red += factor * Image.red(pixel);
+            green += factor * Image.green(pixel);
+            blue += factor * Image.blue(pixel);
+          }
+        }
+        output[i * width + j] = pack(red, green, blue);
+      }
+    }
+  }
+
+  /**
+   * Apply a separable kernel to the rows from startRow (inclusive) to endRow (exclusive) of an
+   * image and write the packed results into the output array.  Horizontally filtered rows are kept
+   * in a ring buffer holding as many rows as the kernel is high, so each image row is filtered
+   * horizontally only once and memory use does not grow with the image height.
+   *
+   * @param input    read-only view of the packed pixels of the original image
+   * @param width    of the original image
+   * @param height   of the original image
+   * @param column   vertical factor of the kernel
+   * @param row      horizontal factor of the kernel
+   * @param output   packed pixels of the filtered image
+   * @param startRow first row to filter
+   * @param endRow   row after the last row to filter
+   */
+  private void filterRows(IntBuffer input, int width, int height, double[] column, double[] row,
+                          int[] output, int startRow, int endRow) {
+    int midRow = column.length / 2;
+    // horizontally filtered rows, three interleaved channels per pixel
+    double[][] ring = new double[column.length][width * 3];
+    // next image row to be filtered horizontally
+    int next = Math.max(0, startRow - midRow);
+    for (int i = startRow; i < endRow; i++) {
+      int last = Math.min(height - 1, i + midRow);
+      while (next <= last) {
+        filterRow(input, width, next, row, ring[next % column.length]);
+        next++;
+      }
+      int top = Math.max(0, midRow - i);
+      int bottom = Math.min(column.length, height - i + midRow);
+      for (int j = 0; j < width; j++) {
+        double red = 0;
+        double green = 0;
+        double blue = 0;
+        for (int ki = top; ki < bottom; ki++) {
+          double[] filtered = ring[(i - midRow + ki) % column.length];
+          double factor = column[ki];
+          red += factor * filtered[j * 3];
+          green += factor * filtered[j * 3 + 1];
+          blue += factor * filtered[j * 3 + 2];
         }
+        output[i * width + j] = pack(red, green, blue);
       }
     }
-    return (int) Math.round(sum);
   }
 
   /**
-   * Return the row or column of the original image that corresponds to the kernel for a given
-   * position in the kernel.
+   * Filter one row of an image horizontally with the row factor of a separable kernel.
    *
-   * @param filterPosition the row or column of the filter
-   * @param imagePosition  the row or column of the image pixel
-   * @param mid            the index of the middle of the kernel
-   * @return the corresponding row or column of the image that corresponds to that provided filter
-   *          position
+   * @param input    read-only view of the packed pixels of the original image
+   * @param width    of the original image
+   * @param imageRow row of the image to filter
+   * @param row      horizontal factor of the kernel
+   * @param result   array receiving three interleaved channel values per pixel
    */
-  private int getColumnOrRow(int filterPosition, int imagePosition, int mid) {
-    if (filterPosition == mid) {
-      return imagePosition;
-    } else if (filterPosition < mid) {
-      int offset = mid - filterPosition;
-      return imagePosition - offset;
-    } else {
-      int offset = filterPosition - mid;
-      return imagePosition + offset;
+  private void filterRow(IntBuffer input, int width, int imageRow, double[] row, double[] result) {
+    int mid = row.length / 2;
+    int offset = imageRow * width - mid;
+    for (int j = 0; j < width; j++) {
+      int left = Math.max(0, mid - j);
+      int right = Math.min(row.length, width - j + mid);
+      double red = 0;
+      double green = 0;
+      double blue = 0;
+      for (int kj = left; kj < right; kj++) {
+        int pixel = input.get(offset + j + kj);
+        red += row[kj] * Image.red(pixel);
+        green += row[kj] * Image.green(pixel);
+        blue += row[kj] * Image.blue(pixel);
+      }
+      result[j * 3] = red;
+      result[j * 3 + 1] = green;
+      result[j * 3 + 2] = blue;
+    }
+  }
+
+  /**
+   * Split a kernel into a column vector and a row vector whose outer product is exactly the
+   * kernel.  The largest entry of the kernel is used as the pivot.  If the kernel is not exactly
+   * separable, null is returned.
+   *
+   * @param matrix the kernel to be split
+   * @return a two element array holding the column vector and the row vector, or null if the
+   *          kernel is not separable
+   */
+  static double[][] separate(double[][] matrix) {
+    int pivotRow = 0;
+    int pivotColumn = 0;
+    for (int i = 0; i < matrix.length; i++) {
+      for (int j = 0; j < matrix[i].length; j++) {
+        if (Math.abs(matrix[i][j]) > Math.abs(matrix[pivotRow][pivotColumn])) {
+          pivotRow = i;
+          pivotColumn = j;
+        }
+      }
+    }
+    double pivot = matrix[pivotRow][pivotColumn];
+    if (pivot == 0) {
+      return null;
     }
+    double[] row = matrix[pivotRow].clone();
+    double[] column = new double[matrix.length];
+    for (int i = 0; i < matrix.length; i++) {
+      column[i] = matrix[i][pivotColumn] / pivot;
+    }
+    for (int i = 0; i < matrix.length; i++) {
+      for (int j = 0; j < row.length; j++) {
+        if (column[i] * row[j] != matrix[i][j]) {
+          return null;
+        }
+      }
+    }
+    return new double[][]{column, row};
+  }
+
+  /**
+   * Round and clamp filtered channel values and pack them into a single pixel.
+   *
+   * @param red   filtered red channel value
+   * @param green filtered green channel value
+   * @param blue  filtered blue channel value
+   * @return packed pixel
+   */
+  private int pack(double red, double green, double blue) {
+    return Image.pack(ImageUtil.clamp((int) Math.round(red)),
+            ImageUtil.clamp((int) Math.round(green)), ImageUtil.clamp((int) Math.round(blue)));
   }
 }
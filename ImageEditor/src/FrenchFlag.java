@@ -27,9 +27,7 @@ public class FrenchFlag implements Generator {
    * @throws IllegalArgumentException if size entered is less than 3 pixels.
    */
   public Image generate(int size) throws IllegalArgumentException {
-    if (size < 3) {
-      throw new IllegalArgumentException("Size must be greater than minimum pixel width.");
-    }
+    checkSize(size);
     // Scale flag dimensions to user input
     int scaleFactor = (int) Math.ceil(size / proportionWidth);
     int width = proportionWidth * scaleFactor;
@@ -44,4 +42,17 @@ public class FrenchFlag implements Generator {
     // Return image of pixels
     return new Image(pixels);
   }
-}
\ No newline at end of file
+
+  /**
+   * Checks that a flag of the given pixel width can be generated, so that a size can be checked
+   * before the flag is generated.
+   *
+   * @param size Desired pixel width of generated image.
+   * @throws IllegalArgumentException if size entered is less than 3 pixels.
+   */
+  public static void checkSize(int size) throws IllegalArgumentException {
+    if (size < 3) {
+      throw new IllegalArgumentException("Size must be greater than minimum pixel width.");
+    }
+  }
+}
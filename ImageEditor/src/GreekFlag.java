@@ -26,9 +26,7 @@ public class GreekFlag implements Generator {
    * @throws IllegalArgumentException if size entered is less than 27 pixels.
    */
   public Image generate(int size) throws IllegalArgumentException {
-    if (size < 27) {
-      throw new IllegalArgumentException("Size must be greater than minimum pixel width.");
-    }
+    checkSize(size);
     // Scale flag dimensions to user input
     int scaleFactor = (int) Math.ceil(size / proportionWidth);
     int height = proportionHeight * scaleFactor;
@@ -75,4 +73,17 @@ public class GreekFlag implements Generator {
     }
   }
 
-}
\ No newline at end of file
+
+  /**
+   * Checks that a flag of the given pixel width can be generated, so that a size can be checked
+   * before the flag is generated.
+   *
+   * @param size Desired pixel width of generated image.
+   * @throws IllegalArgumentException if size entered is less than 27 pixels.
+   */
+  public static void checkSize(int size) throws IllegalArgumentException {
+    if (size < 27) {
+      throw new IllegalArgumentException("Size must be greater than minimum pixel width.");
+    }
+  }
+}
@@ -7,10 +7,17 @@ public class GreyScale extends TransformColor {
   /**
    * Matrix used to transform pixel channels to greyscale values in an image.
    */
-  private final double[][] matrix =
+  private static final double[][] MATRIX =
   {{.2126, .7152, .0722}, {.2126, .7152, .0722},
    {.2126, .7152, .0722}};
 
+  /**
+   * Construct a greyscale color transformation editor.
+   */
+  public GreyScale() {
+    super(MATRIX);
+  }
+
   /**
    * Perform a greyscale color transformation on the provided image.  Returns a new image with
    * greyscale pixel channel values.
@@ -19,6 +26,6 @@ public class GreyScale extends TransformColor {
    * @return new image in greyscale.
    */
   public Image edit(Image image) {
-    return super.transform(image, matrix);
+    return super.transform(image);
   }
 }
@@ -0,0 +1,372 @@
+import java.lang.ref.SoftReference;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This class represents the undo and redo history of a model.  The history is a timeline of
+ * states, each made by applying an edit to the state before it, and a position in the timeline
+ * that marks the current state.  States before the position can be undone and states after it can
+ * be redone.
+ *
+ * <p>Only some states keep their image, as a snapshot that is compressed unless compression is
+ * turned off (see {@link Snapshot}).  These checkpoints are taken every so many states, and every
+ * other state is rebuilt when needed by replaying the edits since the nearest checkpoint before
+ * it.  Every edit must therefore give the same result each time it is applied to the same image.
+ * With a checkpoint interval of 1 every state that has been replaced by an edit keeps its image,
+ * so undo never replays edits; longer intervals keep less memory at the cost of replaying up to
+ * that many edits per undo.  Redo only ever replays the one edit being redone.
+ *
+ * <p>Images that have been seen recently (by being edited, undone, or redone) are also kept through
+ * soft references, which the garbage collector clears when memory runs low.  While such an image
+ * is still there, stepping back to its state takes no work at all.  These images do not count
+ * towards the memory limit.
+ *
+ * <p>Rebuilding an image for undo or redo can be cancelled through its {@link Progress}, which
+ * leaves the history unchanged.  Recording an edit and dropping states cannot be cancelled.
+ *
+ * <p>The history can be limited in the number of undo steps it keeps and in the number of bytes of
+ * pixel data it holds.  When a limit is exceeded, the oldest states are dropped up to the next
+ * checkpoint (the current image becomes a checkpoint if there is none).  If that is still not
+ * enough, the redo states furthest from the current state are dropped.
+ */
+public class History {
+  /**
+   * Default deflate compression level of new snapshots, the fastest level.
+   */
+  public static final int DEFAULT_COMPRESSION = 1;
+  /**
+   * Default number of states between checkpoints, so that every replaced state is kept.
+   */
+  public static final int DEFAULT_CHECKPOINT_INTERVAL = 1;
+
+  /**
+   * This class represents one state in the timeline.
+   */
+  private static class Entry {
+    /**
+     * Edit that made this state from the state before it, or null for the first state.
+     */
+    private final ImageEditor edit;
+    /**
+     * Image of this state, or null if this state is rebuilt by replaying edits.
+     */
+    private Snapshot checkpoint;
+    /**
+     * Image of this state, kept until memory runs low, or null if it has not been seen.
+     */
+    private SoftReference<Image> recent;
+
+    /**
+     * Construct a state made by the given edit.
+     *
+     * @param edit that made this state, or null for the first state
+     */
+    private Entry(ImageEditor edit) {
+      this.edit = edit;
+    }
+
+    /**
+     * Return the image of this state if it is still kept in memory.
+     *
+     * @return image of this state, or null if it is not in memory
+     */
+    private Image recent() {
+      return recent == null ? null : recent.get();
+    }
+
+    /**
+     * Remember the image of this state until memory runs low.
+     *
+     * @param image of this state
+     */
+    private void remember(Image image) {
+      recent = new SoftReference<>(image);
+    }
+  }
+
+  /**
+   * States of the timeline, oldest first.  Empty if there is nothing to undo or redo.
+   */
+  private final List<Entry> entries = new ArrayList<>();
+  /**
+   * Index of the current state in the timeline.
+   */
+  private int position;
+  /**
+   * Largest number of bytes of pixel data kept, after compression.
+   */
+  private long maxBytes;
+  /**
+   * Largest number of undo steps kept.
+   */
+  private int maxDepth;
+  /**
+   * Deflate compression level of new snapshots, or 0 to keep them uncompressed.
+   */
+  private int compression = DEFAULT_COMPRESSION;
+  /**
+   * Number of states from one checkpoint to the next.
+   */
+  private int interval = DEFAULT_CHECKPOINT_INTERVAL;
+  /**
+   * Number of bytes of pixel data currently kept.
+   */
+  private long bytes;
+
+  /**
+   * Construct an empty history with the given limits.
+   *
+   * @param maxBytes largest number of bytes of pixel data to keep
+   * @param maxDepth largest number of undo steps to keep
+   * @throws IllegalArgumentException if either limit is negative
+   */
+  public History(long maxBytes, int maxDepth) throws IllegalArgumentException {
+    setLimits(maxBytes, maxDepth, null);
+  }
+
+  /**
+   * Change the limits of this history, dropping states as needed to fit the new limits.
+   *
+   * @param maxBytes largest number of bytes of pixel data to keep
+   * @param maxDepth largest number of undo steps to keep
+   * @param current  image of the current state, or null if this history is empty
+   * @throws IllegalArgumentException if either limit is negative
+   */
+  public void setLimits(long maxBytes, int maxDepth, Image current)
+          throws IllegalArgumentException {
+    if (maxBytes < 0 || maxDepth < 0) {
+      throw new IllegalArgumentException("History limits cannot be negative.");
+    }
+    this.maxBytes = maxBytes;
+    this.maxDepth = maxDepth;
+    trim(current);
+  }
+
+  /**
+   * Set how images recorded from now on are compressed.  Images already recorded are unchanged.
+   *
+   * @param level deflate compression level from 1 (fastest) to 9 (smallest), or 0 to keep images
+   *              uncompressed
+   * @throws IllegalArgumentException if level is not from 0 to 9
+   */
+  public void setCompression(int level) throws IllegalArgumentException {
+    if (level < 0 || level > 9) {
+      throw new IllegalArgumentException("Compression level must be from 0 to 9.");
+    }
+    this.compression = level;
+  }
+
+  /**
+   * Set how many states there are from one checkpoint to the next for states recorded from now
+   * on.  Checkpoints already taken are unchanged.
+   *
+   * @param interval number of states between checkpoints, 1 to keep every replaced state
+   * @throws IllegalArgumentException if interval is less than 1
+   */
+  public void setCheckpointInterval(int interval) throws IllegalArgumentException {
+    if (interval < 1) {
+      throw new IllegalArgumentException("Checkpoint interval must be greater than 0.");
+    }
+    this.interval = interval;
+  }
+
+  /**
+   * Record an edit of the current state, so that it can be undone.  Anything that could be redone
+   * is dropped.
+   *
+   * @param previous image before the edit
+   * @param edit     that was applied, which must give the same result every time
+   * @param current  image after the edit
+   */
+  public void record(Image previous, ImageEditor edit, Image current) {
+    if (maxDepth == 0) {
+      clear();
+      return;
+    }
+    // the edit has already taken effect, so recording it is not reported or cancelled
+    Progress.detach(() -> {
+      if (entries.isEmpty()) {
+        entries.add(new Entry(null));
+        position = 0;
+      }
+      while (entries.size() > position + 1) {
+        drop(entries.size() - 1);
+      }
+      int last = lastCheckpoint(position);
+      if (last < 0 || position - last >= interval) {
+        checkpoint(entries.get(position), previous);
+      }
+      entries.get(position).remember(previous);
+      entries.add(new Entry(edit));
+      position++;
+      entries.get(position).remember(current);
+      trim(current);
+    });
+  }
+
+  /**
+   * Step back to the state before the current state, rebuilding its image if necessary.
+   *
+   * @return image of the state before the current state
+   * @throws IllegalStateException if there is nothing to undo
+   */
+  public Image undo() throws IllegalStateException {
+    if (position == 0) {
+      throw new IllegalStateException("No edits to undo.");
+    }
+    Image previous = imageAt(position - 1);
+    position--;
+    Progress.detach(() -> trim(previous));
+    return previous;
+  }
+
+  /**
+   * Step forward to the state after the current state, by replaying the edit that made it.
+   *
+   * @param current image of the current state
+   * @return image of the state after the current state
+   * @throws IllegalStateException if there is nothing to redo
+   */
+  public Image redo(Image current) throws IllegalStateException {
+    if (position + 1 >= entries.size()) {
+      throw new IllegalStateException("No edits to redo.");
+    }
+    Entry next = entries.get(position + 1);
+    Image image = next.recent();
+    if (image == null) {
+      image = next.checkpoint != null ? next.checkpoint.restore() : next.edit.edit(current);
+      next.remember(image);
+    }
+    position++;
+    Image result = image;
+    Progress.detach(() -> trim(result));
+    return result;
+  }
+
+  /**
+   * Drop every state in this history.
+   */
+  public void clear() {
+    entries.clear();
+    position = 0;
+    bytes = 0;
+  }
+
+  /**
+   * Return the number of bytes of pixel data currently kept by this history, after compression.
+   *
+   * @return number of bytes kept
+   */
+  public long getBytes() {
+    return bytes;
+  }
+
+  /**
+   * Return the number of edits that can currently be undone.
+   *
+   * @return number of undo steps
+   */
+  public int getUndoDepth() {
+    return position;
+  }
+
+  /**
+   * Return the number of edits that can currently be redone.
+   *
+   * @return number of redo steps
+   */
+  public int getRedoDepth() {
+    return entries.isEmpty() ? 0 : entries.size() - 1 - position;
+  }
+
+  /**
+   * Return the image of a state, rebuilding it if necessary from the nearest state at or before it
+   * whose image is still in memory or kept as a checkpoint.
+   *
+   * @param index of the state in the timeline
+   * @return image of the state
+   */
+  private Image imageAt(int index) {
+    int start = index;
+    Image image = entries.get(start).recent();
+    while (image == null && entries.get(start).checkpoint == null) {
+      start--;
+      image = entries.get(start).recent();
+    }
+    if (image == null) {
+      image = entries.get(start).checkpoint.restore();
+    }
+    for (int i = start + 1; i <= index; i++) {
+      image = entries.get(i).edit.edit(image);
+    }
+    entries.get(index).remember(image);
+    return image;
+  }
+
+  /**
+   * Return the index of the nearest checkpoint at or before a state.
+   *
+   * @param index of the state in the timeline
+   * @return index of the checkpoint, or -1 if there is none
+   */
+  private int lastCheckpoint(int index) {
+    for (int i = index; i >= 0; i--) {
+      if (entries.get(i).checkpoint != null) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Keep the image of a state as a checkpoint.
+   *
+   * @param entry of the state
+   * @param image of the state
+   */
+  private void checkpoint(Entry entry, Image image) {
+    entry.checkpoint = new Snapshot(image, compression);
+    bytes += entry.checkpoint.getBytes();
+  }
+
+  /**
+   * Remove a state from the timeline, without moving the position.
+   *
+   * @param index of the state in the timeline
+   */
+  private void drop(int index) {
+    Entry entry = entries.remove(index);
+    if (entry.checkpoint != null) {
+      bytes -= entry.checkpoint.getBytes();
+    }
+  }
+
+  /**
+   * Drop the oldest states up to the next checkpoint, and then the redo states furthest from the
+   * current state, until this history fits its limits.  If no checkpoint lies between the oldest
+   * state and the current state, the current image becomes one.
+   *
+   * @param current image of the current state
+   */
+  private void trim(Image current) {
+    while (position > maxDepth || (bytes > maxBytes && position > 0)) {
+      int next = 1;
+      while (next < position && entries.get(next).checkpoint == null) {
+        next++;
+      }
+      if (entries.get(next).checkpoint == null) {
+        checkpoint(entries.get(next), current);
+      }
+      for (int i = 0; i < next; i++) {
+        drop(0);
+      }
+      position -= next;
+    }
+    while (bytes > maxBytes && entries.size() > position + 1) {
+      drop(entries.size() - 1);
+    }
+    if (entries.size() == 1) {
+      clear();
+    }
+  }
+}
@@ -55,6 +55,23 @@ public interface IController {
    */
   void dither() throws IllegalStateException;
 
+  /**
+   * Tell the model to dither the current image in the model with a Bayer matrix of the provided
+   * size.
+   *
+   * @param size width and height of the Bayer matrix
+   * @throws IllegalStateException    if there is no current model image
+   * @throws IllegalArgumentException if size is not a power of 2 from 2 to 256
+   */
+  void ditherBayer(int size) throws IllegalStateException, IllegalArgumentException;
+
+  /**
+   * Tell the model to dither the current image in the model with a blue-noise threshold map.
+   *
+   * @throws IllegalStateException if there is no current model image
+   */
+  void ditherBlueNoise() throws IllegalStateException;
+
   /**
    * Tell the model to mosaic the current image in the model using the provided seed.
    *
@@ -129,4 +146,17 @@ public interface IController {
    * @throws IllegalStateException if there is no undo on the current image to redo
    */
   void redo() throws IllegalStateException;
+
+  /**
+   * Tells the model to apply the edits shown in the preview to the full image, and shows the
+   * result.  If this is cancelled the edits stay pending; if it fails they are dropped and the
+   * image from before them is shown again.  Does nothing if there are no pending edits.
+   */
+  void commit();
+
+  /**
+   * Tells the model to drop the edits shown in the preview that have not been committed yet, and
+   * shows the image from before them again.  Does nothing if there are no pending edits.
+   */
+  void discard();
 }
@@ -1,4 +1,6 @@
 import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.List;
 
 /**
  * This interface represents all of the operations a model should be able to perform. It can do
@@ -14,6 +16,16 @@ public interface IModel {
    */
   void blur() throws IllegalStateException;
 
+  /**
+   * Perform a Gaussian blur operation on an image. The blur is done by applying a square filter
+   * that extends the given radius from each pixel, so larger radii blur more strongly.
+   *
+   * @param radius of the blur in pixels
+   * @throws IllegalStateException    if there is no current image loaded into the model
+   * @throws IllegalArgumentException if the radius is less than 1
+   */
+  void blur(int radius) throws IllegalStateException, IllegalArgumentException;
+
   /**
    * Apply a process to an image that gives the image a "stained glass window" effect. This is done
    * by breaking the image down by choosing a set of points in the image (called seeds). Each pixel
@@ -27,6 +39,19 @@ public interface IModel {
    */
   void mosaic(int seed) throws IllegalStateException, IllegalArgumentException;
 
+  /**
+   * Apply a mosaic to an image with seeds chosen by a random number generator started from the
+   * given random seed.  The same image, seed count, and random seed always produce the same
+   * mosaic.
+   *
+   * @param seed       the number of seeds for the mosaic
+   * @param randomSeed starting value of the random number generator used to choose seeds
+   * @throws IllegalStateException    if there is not current image loaded into the model
+   * @throws IllegalArgumentException if the seed is less than 1 or if seed value is greater than
+   *                                  the number of pixels in the current image
+   */
+  void mosaic(int seed, long randomSeed) throws IllegalStateException, IllegalArgumentException;
+
   /**
    * Perform a dithering operation on an image. Dithering is the process of breaking down an image
    * that has many colors into an image that is made of dots from just a few colors.
@@ -35,6 +60,26 @@ public interface IModel {
    */
   void dither() throws IllegalStateException;
 
+  /**
+   * Perform an ordered dithering operation on an image with a Bayer matrix.  Each pixel is made
+   * black or white by comparing its grey value against a threshold from the matrix, which gives a
+   * regular pattern of dots.
+   *
+   * @param size width and height of the Bayer matrix, a power of 2 from 2 to 256
+   * @throws IllegalStateException    if there is not current image loaded into the model
+   * @throws IllegalArgumentException if size is not a power of 2 from 2 to 256
+   */
+  void ditherBayer(int size) throws IllegalStateException, IllegalArgumentException;
+
+  /**
+   * Perform an ordered dithering operation on an image with a blue-noise threshold map.  Each
+   * pixel is made black or white by comparing its grey value against a threshold from the map,
+   * which gives evenly spread dots without a regular pattern.
+   *
+   * @throws IllegalStateException if there is not current image loaded into the model
+   */
+  void ditherBlueNoise() throws IllegalStateException;
+
   /**
    * Perform a sharpen operation on an image. Sharpening is done by apply a 5x5 filter.
    *
@@ -59,14 +104,98 @@ public interface IModel {
    */
   void sepia() throws IllegalStateException;
 
+  /**
+   * Apply a sequence of color transformations to an image in a single pass.  The result is the same
+   * as applying each transformation in turn, but no intermediate image is created.  The whole
+   * sequence is undone as one edit.
+   *
+   * @param transforms color transformations in the order they should be applied
+   * @throws IllegalStateException    if there is no current image loaded into the model
+   * @throws IllegalArgumentException if no transformations are given
+   */
+  void transformColors(List<TransformColor> transforms) throws IllegalStateException,
+          IllegalArgumentException;
+
   /**
    * Get the current image in the model.  If there is no current image in the model,
-   * IllegalStateException is thrown.
+   * IllegalStateException is thrown.  Any pending edits are applied first.  The returned
+   * BufferedImage is not a copy: it shares the model's pixel buffer, and the same image is returned
+   * again as long as the current image does not change, so this takes constant time.  It must not
+   * be modified, since any change to it would change the model's image and its undo history too.
    *
+   * @return the current image
    * @throws IllegalStateException if the current image in the model is null.
+   * @throws java.io.UncheckedIOException if the current image was loaded lazily from a file that
+   *                                      can no longer be read
    */
   BufferedImage getImage() throws IllegalStateException;
 
+  /**
+   * Get the current image as a pyramid of smaller and smaller copies, for showing it at different
+   * sizes (see {@link Pyramid}).  The same pyramid is returned as long as the current image does
+   * not change, so copies that have been built are kept.  Any pending edits are applied first.
+   *
+   * @return pyramid of the current image
+   * @throws IllegalStateException if the current image in the model is null.
+   */
+  Pyramid getPyramid() throws IllegalStateException;
+
+  /**
+   * Get a preview of the current image, with every edit made so far.  If the current image is
+   * previewed (see {@link #setPreviewSize(int)}), the preview is a downsampled copy that is edited
+   * as soon as each edit is made, so it is ready long before the current image.  Otherwise the
+   * current image itself is returned.  Like the current image, the preview must never be drawn on.
+   *
+   * @return preview of the current image
+   * @throws IllegalStateException if the current image in the model is null.
+   */
+  BufferedImage getPreview() throws IllegalStateException;
+
+  /**
+   * Set the size of previews.  Current images wider or taller than the size are previewed by a
+   * copy downsampled to fit within it.  Edits of a previewed image are only applied to the preview
+   * when they are made, and are applied to the image itself when it is next asked for, saved, or
+   * undone, or when {@link #commit()} is called.  Any pending edits are applied first.
+   *
+   * @param size largest width and height of previews in pixels, or 0 to edit images directly
+   * @throws IllegalArgumentException if size is negative
+   */
+  void setPreviewSize(int size) throws IllegalArgumentException;
+
+  /**
+   * Apply the edits shown in the preview to the current image, so that they can be undone, and
+   * make the preview again from the result.  If applying them fails, they are dropped and the
+   * preview shows the current image again; if it is cancelled, they are kept for a later commit.
+   * Does nothing if there are no pending edits.
+   */
+  void commit();
+
+  /**
+   * Drop the edits shown in the preview that have not been committed yet, so that the preview
+   * shows the current image again.  Does nothing if there are no pending edits.
+   */
+  void discard();
+
+  /**
+   * Return whether there is work left for {@link #commit()}: edits or a lazily loaded file that
+   * have not been applied to the current image yet.
+   *
+   * @return true if a commit would change the current image
+   */
+  boolean hasPending();
+
+  /**
+   * Turn lazy mode on or off.  In lazy mode edits are checked when they are made, but the work is
+   * only done when the current image is next asked for, saved, or undone, or when
+   * {@link #commit()} is called.  Images loaded by file name are only read then too.  So work on an
+   * image that is replaced before it is asked for is skipped, and runs of color transformations
+   * are applied in one pass, as a single edit to undo.  Current images are not previewed in lazy
+   * mode.  Any pending edits are applied first.
+   *
+   * @param lazy true to keep edits pending until they are needed
+   */
+  void setLazy(boolean lazy);
+
   /**
    * Load an image into the model.
    *
@@ -74,6 +203,22 @@ public interface IModel {
    */
   void loadImage(int[][][] rgb);
 
+  /**
+   * Load an image into the model.
+   *
+   * @param image to be loaded
+   */
+  void loadImage(Image image);
+
+  /**
+   * Load an image file into the model.  In lazy mode (see {@link #setLazy(boolean)}) only the
+   * header of the file is read now, and the pixels are read when they are first needed.
+   *
+   * @param filename path of the image file
+   * @throws IOException if the file is not a readable image
+   */
+  void loadImage(String filename) throws IOException;
+
   /**
    * Undo last edit operation on an image.  This method replaces the current image in the model with
    * the image version directly preceding current image.  If no previous images exist, undo throws
@@ -99,6 +244,71 @@ public interface IModel {
    */
   void reset();
 
+  /**
+   * Set the number of threads used by image operations.  Blur, sharpen, greyscale, sepia, mosaic
+   * and dither split the image into rows that are processed in parallel.  The result of every
+   * operation is the same for any number of threads.
+   *
+   * @param threads number of threads to use
+   * @throws IllegalArgumentException if threads is less than 1
+   */
+  void setThreads(int threads) throws IllegalArgumentException;
+
+  /**
+   * Limit how much undo and redo history is kept.  History is measured in bytes of pixel data
+   * (after compression), and in undo steps.  When either limit is exceeded the oldest images are
+   * dropped first, so the earliest edits can no longer be undone.
+   *
+   * @param maxBytes largest number of bytes of pixel data to keep
+   * @param maxDepth largest number of undo steps to keep
+   * @throws IllegalArgumentException if either limit is negative
+   */
+  void setHistoryLimits(long maxBytes, int maxDepth) throws IllegalArgumentException;
+
+  /**
+   * Return the number of bytes of pixel data currently kept for undo and redo, after compression
+   * and not counting the current image.
+   *
+   * @return number of bytes of history kept
+   */
+  long getHistoryBytes();
+
+  /**
+   * Set how many edits apart the images kept for undo are.  The images in between are rebuilt when
+   * needed by applying the edits again, starting from the nearest kept image before them.  Larger
+   * intervals keep less memory but make undo slower.  Mosaics use a random seed chosen by the
+   * model, so they are rebuilt exactly.  Images already kept are unchanged.
+   *
+   * @param interval number of edits between kept images, 1 to keep the image before every edit
+   * @throws IllegalArgumentException if interval is less than 1
+   */
+  void setHistoryCheckpoints(int interval) throws IllegalArgumentException;
+
+  /**
+   * Set how images kept for undo and redo are compressed.  Compression lets much more history fit
+   * in the same memory, at the cost of compressing each edit's previous image and decompressing
+   * images when they are undone or redone.  Images already kept are unchanged.
+   *
+   * @param level deflate compression level from 1 (fastest) to 9 (smallest), or 0 to keep images
+   *              uncompressed
+   * @throws IllegalArgumentException if level is not from 0 to 9
+   */
+  void setHistoryCompression(int level) throws IllegalArgumentException;
+
+  /**
+   * Return the number of edits that can currently be undone.
+   *
+   * @return number of undo steps kept
+   */
+  int getHistoryDepth();
+
+  /**
+   * Return the number of undone edits that can currently be redone.
+   *
+   * @return number of redo steps kept
+   */
+  int getHistoryRedoDepth();
+
   /**
    * Generates a square rainbow with Red, Orange, Yellow, Green, Blue, Indigo, Violet colored
    * vertical stripes.
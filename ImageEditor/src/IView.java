@@ -32,4 +32,37 @@ public interface IView {
    * @throws IllegalStateException if there is no image to update
    */
   void updateImage(BufferedImage newImage) throws IllegalStateException;
+
+  /**
+   * Updates the image display in the view with the image at the base of the given pyramid.  The
+   * smaller levels of the pyramid are used to show the image zoomed out.
+   *
+   * @param pyramid of the image to be displayed
+   */
+  void updateImage(Pyramid pyramid);
+
+  /**
+   * Updates the image display in the view with a preview of the next image, until updateImage is
+   * called with the image itself.  The preview may be smaller than the image, in which case it is
+   * stretched to the size of the image being displayed.
+   *
+   * @param preview of the next image
+   */
+  void updatePreview(BufferedImage preview);
+
+  /**
+   * Asks the view to have the controller commit the previewed edits to the full image, as a
+   * cancellable background operation once the running one has finished.  The commit is put off
+   * again if the user starts another operation before it is done.
+   */
+  void scheduleCommit();
+
+  /**
+   * Updates the display of how much undo and redo history the model keeps.
+   *
+   * @param undoSteps number of edits that can be undone
+   * @param redoSteps number of edits that can be redone
+   * @param bytes     number of bytes of pixel data kept for them
+   */
+  void updateHistory(int undoSteps, int redoSteps, long bytes);
 }
@@ -1,5 +1,5 @@
+import java.nio.IntBuffer;
 import java.util.Arrays;
-import java.util.Objects;
 
 /**
  * This class represents an image.  An image is a sequence of individual pixels.  Each pixel has a
@@ -7,57 +7,145 @@ import java.util.Objects;
  * three numbers to represent three color channels - red, green, and blue.  An image has an overall
  * width and height.  An image has methods to get its sequence of pixels, its width and height, and
  * to determine if one image is equal to another. There is also a method to get a hashcode.
+ *
+ * <p>Pixels are stored in one flat array in row-major order.  Each pixel is packed into a single
+ * integer with the red channel in bits 16-23, the green channel in bits 8-15 and the blue channel
+ * in bits 0-7 (the same layout used by BufferedImage.TYPE_INT_RGB).  Images are never modified
+ * after construction.
  */
 public class Image {
   /**
-   * Sequence of pixels in this image.
+   * Packed pixels of this image in row-major order.
    */
-  private int[][][] rgb;
+  private final int[] pixels;
   /**
    * Width of this image.
    */
-  private int width;
+  private final int width;
   /**
    * Height of this image.
    */
-  private int height;
+  private final int height;
 
   /**
    * Construct an image from a 3D integer array of pixels.  The first level of the array represents
    * the row position and the second level of the array represents the row position for each pixel.
    * The third level of the array represents the red, green, and blue channels of each pixel (in
-   * corresponding order).
+   * corresponding order).  Channel values are expected to be within the 0-255 range.
    *
    * @param rgb 3D array of pixels for new Image.
    */
   public Image(int[][][] rgb) {
-    this.rgb = rgb;
     this.height = rgb.length;
     this.width = rgb[0].length;
+    this.pixels = new int[width * height];
+    for (int i = 0; i < height; i++) {
+      int offset = i * width;
+      for (int j = 0; j < width; j++) {
+        pixels[offset + j] = pack(rgb[i][j][0], rgb[i][j][1], rgb[i][j][2]);
+      }
+    }
+  }
+
+  /**
+   * Construct an image of given width and height from an array of packed pixels in row-major
+   * order.  The new image takes ownership of the given array, so the caller must not modify the
+   * array after construction.
+   *
+   * @param width  of the new image.
+   * @param height of the new image.
+   * @param pixels packed pixels of the new image (see {@link #pack(int, int, int)}).
+   * @throws IllegalArgumentException if the dimensions are not positive or the length of the
+   *                                  pixel array does not match the dimensions.
+   */
+  public Image(int width, int height, int[] pixels) throws IllegalArgumentException {
+    if (width < 1 || height < 1 || pixels.length != width * height) {
+      throw new IllegalArgumentException("Pixel array does not match image dimensions.");
+    }
+    this.width = width;
+    this.height = height;
+    this.pixels = pixels;
   }
 
   /**
    * Return the reference for a copy of the 3D integer array that contains pixel information for
    * this image.  The first level of the array represents the row position and the second level of
    * the array represents the row position for each pixel. The third level of the array represents
-   * the red, green, and blue channels of each pixel (in corresponding order).
+   * the red, green, and blue channels of each pixel (in corresponding order).  This is a mutable
+   * snapshot; callers that only read pixels should use {@link #getPixel(int, int)} or
+   * {@link #getPixelView()} instead, which do not copy.
    *
    * @return reference for a copy of the 3D integer array that contains pixel information for this
    *          image.
    */
   public int[][][] getRgb() {
-    int[][][] pixels = new int[this.height][this.width][3];
-    // make a deep copy and return the new reference
+    int[][][] rgb = new int[this.height][this.width][3];
     for (int i = 0; i < height; i++) {
       for (int j = 0; j < width; j++) {
-        for (int k = 0; k < 3; k++) {
-          pixels[i][j][k] = rgb[i][j][k];
-        }
+        int pixel = pixels[i * width + j];
+        rgb[i][j][0] = red(pixel);
+        rgb[i][j][1] = green(pixel);
+        rgb[i][j][2] = blue(pixel);
       }
     }
+    return rgb;
+  }
+
+  /**
+   * Return a copy of the packed pixels of this image in row-major order.  This is a mutable
+   * snapshot that the caller may change freely without affecting this image.
+   *
+   * @return copy of the packed pixels of this image.
+   */
+  public int[] copyPixels() {
+    return pixels.clone();
+  }
+
+  /**
+   * Return a read-only view of the packed pixels of this image in row-major order.  The pixel at
+   * a given row and column is at index (row * width + column).  No pixels are copied, so this is
+   * the cheapest way to read every pixel of an image.
+   *
+   * @return read-only buffer backed by the pixels of this image.
+   */
+  public IntBuffer getPixelView() {
+    return IntBuffer.wrap(pixels).asReadOnlyBuffer();
+  }
+
+  /**
+   * Return the packed pixels of this image in row-major order without copying them.  This is only
+   * for code that must share the pixels with another object, such as a BufferedImage used to
+   * display this image, and the array must never be modified.
+   *
+   * @return the packed pixels of this image.
+   */
+  int[] sharedPixels() {
     return pixels;
   }
 
+  /**
+   * Return the packed value of the pixel at the given row and column.
+   *
+   * @param row    of the pixel.
+   * @param column of the pixel.
+   * @return packed red, green, and blue channels of the pixel.
+   */
+  public int getPixel(int row, int column) {
+    return pixels[row * width + column];
+  }
+
+  /**
+   * Return the value of one channel of the pixel at the given row and column.
+   *
+   * @param row     of the pixel.
+   * @param column  of the pixel.
+   * @param channel 0 for red, 1 for green, 2 for blue.
+   * @return value of the channel (0-255).
+   */
+  public int getChannel(int row, int column, int channel) {
+    return (pixels[row * width + column] >> (16 - 8 * channel)) & 0xFF;
+  }
+
   /**
    * Return the width of this image.  The width is the number of pixels in one row of this image.
    *
@@ -77,11 +165,53 @@ public class Image {
     return height;
   }
 
+  /**
+   * Pack red, green, and blue channel values (each 0-255) into a single pixel integer.
+   *
+   * @param red   channel value.
+   * @param green channel value.
+   * @param blue  channel value.
+   * @return packed pixel.
+   */
+  public static int pack(int red, int green, int blue) {
+    return (red << 16) | (green << 8) | blue;
+  }
+
+  /**
+   * Return the red channel of a packed pixel.
+   *
+   * @param pixel packed pixel.
+   * @return red channel value (0-255).
+   */
+  public static int red(int pixel) {
+    return (pixel >> 16) & 0xFF;
+  }
+
+  /**
+   * Return the green channel of a packed pixel.
+   *
+   * @param pixel packed pixel.
+   * @return green channel value (0-255).
+   */
+  public static int green(int pixel) {
+    return (pixel >> 8) & 0xFF;
+  }
+
+  /**
+   * Return the blue channel of a packed pixel.
+   *
+   * @param pixel packed pixel.
+   * @return blue channel value (0-255).
+   */
+  public static int blue(int pixel) {
+    return pixel & 0xFF;
+  }
+
   /**
    * Returns true if other image is equal to this image.  Other image is equal if it is an instance
    * of the Image class, if the width and height of other image equals width and height of this
-   * image, and if the values in the pixel array for both images are deeply equal.  This equals
-   * method follows rules of reflexivity, symmetry, and transitivity.
+   * image, and if the values in the pixel array for both images are equal.  This equals method
+   * follows rules of reflexivity, symmetry, and transitivity.
    *
    * @return true if other image is equal to this image; false otherwise.
    */
@@ -95,16 +225,16 @@ public class Image {
     }
     Image other = (Image) o;
     return (this.width == other.width && this.height == other.height
-            && Arrays.deepEquals(this.rgb, other.rgb));
+            && Arrays.equals(this.pixels, other.pixels));
   }
 
   /**
    * Returns the hashcode of this object.
    *
-   * @return the hashcode of the object based on the rgb, height, and width fields
+   * @return the hashcode of the object based on the pixels, height, and width fields
    */
   @Override
   public int hashCode() {
-    return Objects.hash(this.rgb, this.height, this.width);
+    return 31 * (31 * Arrays.hashCode(this.pixels) + this.height) + this.width;
   }
 }
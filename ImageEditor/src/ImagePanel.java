@@ -0,0 +1,306 @@
+import java.awt.Dimension;
+import java.awt.Graphics;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.event.InputEvent;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.awt.event.MouseWheelEvent;
+import java.awt.image.BufferedImage;
+
+import javax.swing.JPanel;
+import javax.swing.JViewport;
+import javax.swing.SwingUtilities;
+import javax.swing.SwingWorker;
+
+/**
+ * This class represents a panel that shows an image at a chosen zoom, meant to be placed in a
+ * scroll pane.  The image is given as a {@link Pyramid}, and is drawn from the smallest level that
+ * is still at least as large as the image on screen, so zooming out never scales down more than
+ * twice the pixels shown.  Only the tiles of that level that overlap the visible part of the panel
+ * are drawn, so large images repaint quickly.  A level that has not been built yet is built in the
+ * background, and until it is ready the nearest level already built is drawn instead.
+ *
+ * <p>The image can be dragged with the mouse to pan it, and the mouse wheel zooms in and out while
+ * the control key is held down.  Zoom is always a power of 2.
+ */
+public class ImagePanel extends JPanel {
+  /**
+   * Version of the serialized form of this panel.
+   */
+  private static final long serialVersionUID = 1L;
+  /**
+   * Width and height in pixels of the tiles that levels are drawn in.
+   */
+  private static final int TILE = 256;
+  /**
+   * Smallest zoom, as a power of 2.
+   */
+  private static final int MIN_ZOOM = -8;
+  /**
+   * Largest zoom, as a power of 2.
+   */
+  private static final int MAX_ZOOM = 5;
+
+  /**
+   * Image shown, or null if there is none.
+   */
+  private Pyramid pyramid = null;
+  /**
+   * Preview shown in place of the image, stretched to the size of the image, or null if the image
+   * itself is shown.
+   */
+  private BufferedImage preview = null;
+  /**
+   * Zoom as a power of 2, so 0 shows the image at its own size and -1 at half size.
+   */
+  private int zoom = 0;
+  /**
+   * Point where the mouse was last pressed or dragged, in screen coordinates, or null.
+   */
+  private Point dragStart = null;
+  /**
+   * Whether a level of the pyramid is being built in the background.
+   */
+  private boolean building = false;
+
+  /**
+   * Construct a panel that shows no image yet.
+   */
+  public ImagePanel() {
+    MouseAdapter mouse = new MouseAdapter() {
+      @Override
+      public void mousePressed(MouseEvent e) {
+        dragStart = e.getLocationOnScreen();
+      }
+
+      @Override
+      public void mouseDragged(MouseEvent e) {
+        JViewport viewport = getViewport();
+        if (viewport == null || dragStart == null) {
+          return;
+        }
+        Point now = e.getLocationOnScreen();
+        Point position = viewport.getViewPosition();
+        position.translate(dragStart.x - now.x, dragStart.y - now.y);
+        scrollTo(viewport, position);
+        dragStart = now;
+      }
+
+      @Override
+      public void mouseWheelMoved(MouseWheelEvent e) {
+        if ((e.getModifiersEx() & InputEvent.CTRL_DOWN_MASK) == 0) {
+          // without the control key the wheel scrolls as usual
+          getParent().dispatchEvent(SwingUtilities.convertMouseEvent(ImagePanel.this, e,
+                  getParent()));
+          return;
+        }
+        setZoom(zoom - Integer.signum(e.getWheelRotation()), e.getPoint());
+      }
+    };
+    addMouseListener(mouse);
+    addMouseMotionListener(mouse);
+    addMouseWheelListener(mouse);
+  }
+
+  /**
+   * Show the given image, replacing any preview.  The zoom is kept.
+   *
+   * @param pyramid of the image to be shown
+   */
+  public void setPyramid(Pyramid pyramid) {
+    this.pyramid = pyramid;
+    this.preview = null;
+    revalidate();
+    repaint();
+  }
+
+  /**
+   * Show a preview of the next image, stretched to the size of the image being shown, until
+   * {@link #setPyramid(Pyramid)} is called.  If no image is being shown, the preview is shown at
+   * its own size.
+   *
+   * @param preview to be shown
+   */
+  public void setPreview(BufferedImage preview) {
+    this.preview = preview;
+    revalidate();
+    repaint();
+  }
+
+  /**
+   * Double the zoom, keeping the middle of the visible area in place.
+   */
+  public void zoomIn() {
+    setZoom(zoom + 1, null);
+  }
+
+  /**
+   * Halve the zoom, keeping the middle of the visible area in place.
+   */
+  public void zoomOut() {
+    setZoom(zoom - 1, null);
+  }
+
+  /**
+   * Show the image at its own size, keeping the middle of the visible area in place.
+   */
+  public void actualSize() {
+    setZoom(0, null);
+  }
+
+  @Override
+  public Dimension getPreferredSize() {
+    if (pyramid == null && preview == null) {
+      return new Dimension(0, 0);
+    }
+    return new Dimension(scaled(imageWidth()), scaled(imageHeight()));
+  }
+
+  @Override
+  protected void paintComponent(Graphics g) {
+    super.paintComponent(g);
+    if (preview != null) {
+      g.drawImage(preview, 0, 0, scaled(imageWidth()), scaled(imageHeight()), this);
+      return;
+    }
+    if (pyramid == null) {
+      return;
+    }
+    double scale = Math.scalb(1.0, zoom);
+    int wanted = pyramid.levelFor(scale);
+    int level = pyramid.getBuiltLevel(wanted);
+    if (level < wanted) {
+      buildLevel(pyramid, wanted);
+    }
+    BufferedImage image = pyramid.getLevelImage(level);
+    // size of one pixel of the level on screen
+    double size = Math.scalb(scale, level);
+    Rectangle clip = g.getClipBounds();
+    if (clip == null) {
+      clip = new Rectangle(0, 0, getWidth(), getHeight());
+    }
+    int firstColumn = Math.max(0, (int) (clip.x / size) / TILE);
+    int firstRow = Math.max(0, (int) (clip.y / size) / TILE);
+    int lastColumn = Math.min(image.getWidth() - 1, (int) ((clip.x + clip.width) / size)) / TILE;
+    int lastRow = Math.min(image.getHeight() - 1, (int) ((clip.y + clip.height) / size)) / TILE;
+    for (int row = firstRow; row <= lastRow; row++) {
+      for (int column = firstColumn; column <= lastColumn; column++) {
+        int left = column * TILE;
+        int top = row * TILE;
+        int right = Math.min(image.getWidth(), left + TILE);
+        int bottom = Math.min(image.getHeight(), top + TILE);
+        // neighbouring tiles round their shared edge the same way, so no gaps appear
+        g.drawImage(image, (int) (left * size), (int) (top * size), (int) (right * size),
+                (int) (bottom * size), left, top, right, bottom, this);
+      }
+    }
+  }
+
+  /**
+   * Build a level of a pyramid in the background and repaint once it is ready, unless a level is
+   * already being built.  Any level still missing then is asked for again by the next paint.
+   *
+   * @param levels pyramid to build the level of
+   * @param level  to be built
+   */
+  private void buildLevel(Pyramid levels, int level) {
+    if (building) {
+      return;
+    }
+    building = true;
+    new SwingWorker<Void, Void>() {
+      @Override
+      protected Void doInBackground() {
+        levels.getLevel(level);
+        return null;
+      }
+
+      @Override
+      protected void done() {
+        building = false;
+        repaint();
+      }
+    }.execute();
+  }
+
+  /**
+   * Change the zoom, keeping the given point of the panel in the same place on screen.
+   *
+   * @param newZoom as a power of 2, limited to the supported range
+   * @param anchor  point of the panel to keep in place, or null for the middle of the visible area
+   */
+  private void setZoom(int newZoom, Point anchor) {
+    int target = Math.max(MIN_ZOOM, Math.min(MAX_ZOOM, newZoom));
+    if (target == zoom) {
+      return;
+    }
+    JViewport viewport = getViewport();
+    Point position = viewport == null ? new Point() : viewport.getViewPosition();
+    Point fixed = anchor;
+    if (fixed == null) {
+      Rectangle visible = getVisibleRect();
+      fixed = new Point(visible.x + visible.width / 2, visible.y + visible.height / 2);
+    }
+    double ratio = Math.scalb(1.0, target - zoom);
+    zoom = target;
+    revalidate();
+    if (viewport != null) {
+      viewport.validate();
+      scrollTo(viewport, new Point((int) (fixed.x * ratio) - (fixed.x - position.x),
+              (int) (fixed.y * ratio) - (fixed.y - position.y)));
+    }
+    repaint();
+  }
+
+  /**
+   * Move the visible area of the viewport to the given position, kept within the panel.
+   *
+   * @param viewport that this panel is shown in
+   * @param position of the top left corner of the visible area
+   */
+  private void scrollTo(JViewport viewport, Point position) {
+    Dimension extent = viewport.getExtentSize();
+    Dimension size = getPreferredSize();
+    position.x = Math.max(0, Math.min(position.x, size.width - extent.width));
+    position.y = Math.max(0, Math.min(position.y, size.height - extent.height));
+    viewport.setViewPosition(position);
+  }
+
+  /**
+   * Return the viewport that this panel is shown in.
+   *
+   * @return viewport, or null if this panel is not in one
+   */
+  private JViewport getViewport() {
+    return getParent() instanceof JViewport ? (JViewport) getParent() : null;
+  }
+
+  /**
+   * Return the width of the image shown, or of the preview if there is no image.
+   *
+   * @return width in pixels
+   */
+  private int imageWidth() {
+    return pyramid != null ? pyramid.getWidth() : preview.getWidth();
+  }
+
+  /**
+   * Return the height of the image shown, or of the preview if there is no image.
+   *
+   * @return height in pixels
+   */
+  private int imageHeight() {
+    return pyramid != null ? pyramid.getHeight() : preview.getHeight();
+  }
+
+  /**
+   * Return a length in pixels of the image as it is shown at the current zoom.
+   *
+   * @param length in pixels of the image
+   * @return length on screen, at least 1
+   */
+  private int scaled(int length) {
+    return (int) Math.max(1, Math.ceil(Math.scalb((double) length, zoom)));
+  }
+}
@@ -1,10 +1,22 @@
-import java.awt.Color;
+import java.awt.Dimension;
 import java.awt.image.BufferedImage;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.DirectColorModel;
+import java.awt.image.PixelInterleavedSampleModel;
+import java.awt.image.Raster;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+import java.io.File;
 import java.io.IOException;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+import java.util.Iterator;
 
 import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.FileImageInputStream;
+import javax.imageio.stream.ImageInputStream;
 
 /**
  * This class contains utility methods to read an image from file and write to a file. This class
@@ -20,26 +32,124 @@ public class ImageUtil {
    * @return the image as a 3D array of integer values
    */
   public static int[][][] readImage(String filename) throws IOException {
-    BufferedImage input;
+    return loadImage(filename).getRgb();
+  }
 
-    input = ImageIO.read(new FileInputStream(filename));
+  /**
+   * Read an image file and return its contents as an Image.  The file is decoded once, and pixels
+   * are copied in bulk from the decoded raster straight into the packed pixel array of the new
+   * image, which also carries the width and height of the file.
+   *
+   * @param filename the path of the file. Look at the ImageIO documentation to see which file
+   *                 formats are supported.
+   * @return the image read from the file
+   * @throws IOException if the file cannot be read or is not in a supported format
+   */
+  public static Image loadImage(String filename) throws IOException {
+    return toImage(readFile(filename, reader -> reader.read(0)));
+  }
+
+  /**
+   * Convert a BufferedImage to an Image.  The common layouts produced by the ImageIO decoders
+   * (packed integer RGB and interleaved byte BGR, with or without alpha) are read directly from the
+   * raster's data buffer.  Any other layout is read with one bulk getRGB call.  Alpha is discarded.
+   *
+   * @param input image to be converted
+   * @return Image with the same pixels as the input
+   */
+  public static Image toImage(BufferedImage input) {
+    int width = input.getWidth();
+    int height = input.getHeight();
+    int[] pixels = new int[width * height];
+    boolean copied = false;
+    switch (input.getType()) {
+      case BufferedImage.TYPE_INT_RGB:
+      case BufferedImage.TYPE_INT_ARGB:
+        copied = copyInts(input.getRaster(), width, height, pixels);
+        break;
+      case BufferedImage.TYPE_3BYTE_BGR:
+      case BufferedImage.TYPE_4BYTE_ABGR:
+        copied = copyBytes(input.getRaster(), width, height, pixels);
+        break;
+      default:
+        break;
+    }
+    if (!copied) {
+      input.getRGB(0, 0, width, height, pixels, 0, width);
+      for (int i = 0; i < pixels.length; i++) {
+        pixels[i] &= 0xFFFFFF;
+      }
+    }
+    return new Image(width, height, pixels);
+  }
 
-    int[][][] result = new int[input.getHeight()][input.getWidth()][3];
+  /**
+   * Copy pixels from a raster that stores one packed RGB integer per pixel.
+   *
+   * @param raster of the decoded image
+   * @param width  of the image
+   * @param height of the image
+   * @param pixels packed pixel array to be filled
+   * @return true if the pixels were copied, false if the raster layout is not supported
+   */
+  private static boolean copyInts(Raster raster, int width, int height, int[] pixels) {
+    if (!(raster.getDataBuffer() instanceof DataBufferInt)
+            || !(raster.getSampleModel() instanceof SinglePixelPackedSampleModel)
+            || raster.getSampleModelTranslateX() != 0 || raster.getSampleModelTranslateY() != 0) {
+      return false;
+    }
+    DataBufferInt buffer = (DataBufferInt) raster.getDataBuffer();
+    SinglePixelPackedSampleModel model = (SinglePixelPackedSampleModel) raster.getSampleModel();
+    int[] data = buffer.getData();
+    int stride = model.getScanlineStride();
+    for (int i = 0; i < height; i++) {
+      int source = buffer.getOffset() + i * stride;
+      int target = i * width;
+      for (int j = 0; j < width; j++) {
+        pixels[target + j] = data[source + j] & 0xFFFFFF;
+      }
+    }
+    return true;
+  }
 
-    for (int i = 0; i < input.getHeight(); i++) {
-      for (int j = 0; j < input.getWidth(); j++) {
-        int color = input.getRGB(j, i);
-        Color c = new Color(color);
-        result[i][j][0] = c.getRed();
-        result[i][j][1] = c.getGreen();
-        result[i][j][2] = c.getBlue();
+  /**
+   * Copy pixels from a raster that stores interleaved byte channels for each pixel.
+   *
+   * @param raster of the decoded image
+   * @param width  of the image
+   * @param height of the image
+   * @param pixels packed pixel array to be filled
+   * @return true if the pixels were copied, false if the raster layout is not supported
+   */
+  private static boolean copyBytes(Raster raster, int width, int height, int[] pixels) {
+    if (!(raster.getDataBuffer() instanceof DataBufferByte)
+            || !(raster.getSampleModel() instanceof PixelInterleavedSampleModel)
+            || raster.getSampleModelTranslateX() != 0 || raster.getSampleModelTranslateY() != 0) {
+      return false;
+    }
+    DataBufferByte buffer = (DataBufferByte) raster.getDataBuffer();
+    PixelInterleavedSampleModel model = (PixelInterleavedSampleModel) raster.getSampleModel();
+    byte[] data = buffer.getData();
+    int[] offsets = model.getBandOffsets();
+    int red = offsets[0];
+    int green = offsets[1];
+    int blue = offsets[2];
+    int step = model.getPixelStride();
+    int stride = model.getScanlineStride();
+    for (int i = 0; i < height; i++) {
+      int source = buffer.getOffset() + i * stride;
+      int target = i * width;
+      for (int j = 0; j < width; j++) {
+        pixels[target + j] = Image.pack(data[source + red] & 0xFF, data[source + green] & 0xFF,
+                data[source + blue] & 0xFF);
+        source += step;
       }
     }
-    return result;
+    return true;
   }
 
   /**
-   * Convenience function to get the width of an image.
+   * Convenience function to get the width of an image.  Only the header of the file is read.
    *
    * @param filename the full path of the image file. Look at the ImageIO class to see which file
    *                 formats are supported
@@ -48,15 +158,11 @@ public class ImageUtil {
    */
 
   public static int getWidth(String filename) throws IOException {
-    BufferedImage input;
-
-    input = ImageIO.read(new FileInputStream(filename));
-
-    return input.getWidth();
+    return getDimensions(filename).width;
   }
 
   /**
-   * Convenience function to get the height of an image.
+   * Convenience function to get the height of an image.  Only the header of the file is read.
    *
    * @param filename the full path of the image file. Look at the ImageIO class to see which file
    *                 formats are supported
@@ -64,11 +170,62 @@ public class ImageUtil {
    * @throws IOException if the file is not found
    */
   public static int getHeight(String filename) throws IOException {
-    BufferedImage input;
+    return getDimensions(filename).height;
+  }
 
-    input = ImageIO.read(new FileInputStream(filename));
+  /**
+   * Get the width and height of an image file without decoding its pixels.  Only the header of the
+   * file is read, so this is a cheap way to check that a file is a readable image.
+   *
+   * @param filename the full path of the image file. Look at the ImageIO class to see which file
+   *                 formats are supported
+   * @return the width and height of the image in the file
+   * @throws IOException if the file is not found or is not in a supported format
+   */
+  public static Dimension getDimensions(String filename) throws IOException {
+    return readFile(filename, reader -> new Dimension(reader.getWidth(0), reader.getHeight(0)));
+  }
 
-    return input.getHeight();
+  /**
+   * This interface represents work done with an image reader positioned on an image file.
+   *
+   * @param <T> type of the result of the work
+   */
+  private interface ReaderTask<T> {
+    /**
+     * Do the work with the given reader.
+     *
+     * @param reader image reader for the file
+     * @return result of the work
+     * @throws IOException if the file cannot be read
+     */
+    T apply(ImageReader reader) throws IOException;
+  }
+
+  /**
+   * Open an image file, find a reader for its format, and run the given task with that reader.
+   * The reader only decodes as much of the file as the task asks for.
+   *
+   * @param filename the full path of the image file
+   * @param task     work to do with the reader
+   * @param <T>      type of the result of the task
+   * @return result of the task
+   * @throws IOException if the file is not found or is not in a supported format
+   */
+  private static <T> T readFile(String filename, ReaderTask<T> task) throws IOException {
+    try (ImageInputStream in = new FileImageInputStream(new File(filename))) {
+      Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+      if (!readers.hasNext()) {
+        throw new IOException("Unsupported image format: " + filename);
+      }
+      ImageReader reader = readers.next();
+      try {
+        reader.setInput(in, true, true);
+        return task.apply(reader);
+      } finally {
+        reader.dispose();
+      }
+    }
   }
 
 
@@ -86,9 +243,37 @@ public class ImageUtil {
   public static void writeImage(int[][][] rgb, int width, int height, String
           filename)
           throws IOException {
-    BufferedImage output = getBufferImage(rgb, width, height);
-    String extension = filename.substring(filename.indexOf(".") + 1);
-    ImageIO.write(output, extension, new FileOutputStream(filename));
+    writeImage(getBufferImage(rgb, width, height), filename);
+  }
+
+  /**
+   * Write an image to a file in a given format.  The format is taken from the extension of the
+   * file name.
+   *
+   * @param image    the image to be written
+   * @param filename the full path of where the image must be stored. This should include the name
+   *                 and extension of the file
+   * @throws IOException if the file cannot be written to the provided path
+   */
+  public static void writeImage(Image image, String filename) throws IOException {
+    writeImage(getBufferImage(image), filename);
+  }
+
+  /**
+   * Write a BufferedImage to a file in a given format.  The format is taken from the extension of
+   * the file name.  The file is written directly rather than through a cached output stream.
+   *
+   * @param output   the image to be written
+   * @param filename the full path of where the image must be stored. This should include the name
+   *                 and extension of the file
+   * @throws IOException if the file cannot be written to the provided path or the extension is
+   *                     not a supported format
+   */
+  public static void writeImage(BufferedImage output, String filename) throws IOException {
+    String extension = filename.substring(filename.lastIndexOf(".") + 1);
+    if (!ImageIO.write(output, extension, new File(filename))) {
+      throw new IOException("Unsupported image format: " + extension);
+    }
   }
 
   /**
@@ -104,6 +289,8 @@ public class ImageUtil {
             width,
             height,
             BufferedImage.TYPE_INT_RGB);
+    // write straight into the pixel array backing the image
+    int[] data = ((DataBufferInt) output.getRaster().getDataBuffer()).getData();
 
     for (int i = 0; i < height; i++) {
       for (int j = 0; j < width; j++) {
@@ -114,13 +301,93 @@ public class ImageUtil {
         //color is stored in 1 integer, with the 4 bytes storing ARGB in that
         //order. Each of r,g,b are stored in 8 bits (hence between 0 and 255).
         // So we put them all in one integer by using bit-shifting << as below
-        int color = (r << 16) + (g << 8) + b;
-        output.setRGB(j, i, color);
+        data[i * width + j] = (r << 16) + (g << 8) + b;
       }
     }
     return output;
   }
 
+  /**
+   * Returns the given image as a BufferedImage.  The packed pixels of the image already use the
+   * TYPE_INT_RGB layout, so they are copied into the new BufferedImage in one bulk operation.
+   *
+   * @param image to be converted
+   * @return BufferedImage object representation of given image
+   */
+  public static BufferedImage getBufferImage(Image image) {
+    BufferedImage output = new BufferedImage(image.getWidth(), image.getHeight(),
+            BufferedImage.TYPE_INT_RGB);
+    image.getPixelView().get(((DataBufferInt) output.getRaster().getDataBuffer()).getData());
+    return output;
+  }
+
+  /**
+   * Returns a TYPE_INT_RGB BufferedImage that shares the pixels of the given image instead of
+   * copying them, so it is made in constant time.  Images never change, so the BufferedImage must
+   * only be read (for example displayed or written to a file) and never drawn on.
+   *
+   * @param image to be viewed
+   * @return BufferedImage backed by the pixels of the given image
+   */
+  public static BufferedImage viewBufferImage(Image image) {
+    int width = image.getWidth();
+    int height = image.getHeight();
+    DirectColorModel model = new DirectColorModel(24, 0xFF0000, 0xFF00, 0xFF);
+    DataBufferInt buffer = new DataBufferInt(image.sharedPixels(), width * height);
+    WritableRaster raster = Raster.createPackedRaster(buffer, width, height, width,
+            model.getMasks(), null);
+    return new BufferedImage(model, raster, false, null);
+  }
+
+  /**
+   * Returns a smaller copy of the given image, where each pixel is the average of a square block of
+   * factor x factor pixels of the original (blocks on the right and bottom edges may be smaller).
+   * Rows of the copy are computed in parallel (see {@link RowBands}).
+   *
+   * @param image  to be copied
+   * @param factor by which the width and height are divided, rounding up
+   * @return the smaller image
+   * @throws IllegalArgumentException if factor is less than 1
+   */
+  public static Image downsample(Image image, int factor) throws IllegalArgumentException {
+    if (factor < 1) {
+      throw new IllegalArgumentException("Downsampling factor must be greater than 0.");
+    }
+    int width = image.getWidth();
+    int height = image.getHeight();
+    int outWidth = (width + factor - 1) / factor;
+    int outHeight = (height + factor - 1) / factor;
+    int[] output = new int[outWidth * outHeight];
+    IntBuffer input = image.getPixelView();
+    Progress.current().expect(outHeight);
+    RowBands.forEach(outHeight, (index, startRow, endRow) -> {
+      long[] red = new long[outWidth];
+      long[] green = new long[outWidth];
+      long[] blue = new long[outWidth];
+      for (int r = startRow; r < endRow; r++) {
+        Arrays.fill(red, 0);
+        Arrays.fill(green, 0);
+        Arrays.fill(blue, 0);
+        int top = r * factor;
+        int bottom = Math.min(height, top + factor);
+        for (int y = top; y < bottom; y++) {
+          for (int x = 0; x < width; x++) {
+            int pixel = input.get(y * width + x);
+            red[x / factor] += Image.red(pixel);
+            green[x / factor] += Image.green(pixel);
+            blue[x / factor] += Image.blue(pixel);
+          }
+        }
+        for (int c = 0; c < outWidth; c++) {
+          long count = (long) (bottom - top) * (Math.min(width, (c + 1) * factor) - c * factor);
+          output[r * outWidth + c] = Image.pack((int) ((red[c] + count / 2) / count),
+                  (int) ((green[c] + count / 2) / count), (int) ((blue[c] + count / 2) / count));
+        }
+      }
+    });
+    return new Image(outWidth, outHeight, output);
+  }
+
   /**
    * Returns which row or column a particular index should be in. The numbering starts at 0. Ex. If
    * making vertical stripes and width is 3 and index is 0-2 then 1 will be returned, for index 3-5
@@ -136,29 +403,27 @@ public class ImageUtil {
   }
 
   /**
-   * Populate an array representing pixels at a provided index which a specified color.
+   * Return the packed pixel value of a rainbow stripe color.
    *
-   * @param pixels the pixels array to be populated
-   * @param color  an integer corresponding to which color should be put in the pixel array.
-   *               Numbering is 0-6 in correspondence to colors in the order of ROYGBIV
-   * @param i      the row to be populated
-   * @param j      the column to be populated
+   * @param color an integer corresponding to which color should be returned. Numbering is 0-6 in
+   *              correspondence to colors in the order of ROYGBIV
+   * @return packed pixel value of the stripe color
    */
-  private static void populateRainbow(int[][][] pixels, int color, int i, int j) {
+  private static int rainbowColor(int color) {
     if (color == 0) {
-      pixels[i][j] = ColorRGB.RED.getRGB();
+      return ColorRGB.RED.getPacked();
     } else if (color == 1) {
-      pixels[i][j] = ColorRGB.ORANGE.getRGB();
+      return ColorRGB.ORANGE.getPacked();
     } else if (color == 2) {
-      pixels[i][j] = ColorRGB.YELLOW.getRGB();
+      return ColorRGB.YELLOW.getPacked();
     } else if (color == 3) {
-      pixels[i][j] = ColorRGB.GREEN.getRGB();
+      return ColorRGB.GREEN.getPacked();
     } else if (color == 4) {
-      pixels[i][j] = ColorRGB.BLUE.getRGB();
+      return ColorRGB.BLUE.getPacked();
     } else if (color == 5) {
-      pixels[i][j] = ColorRGB.INDIGO.getRGB();
+      return ColorRGB.INDIGO.getPacked();
     } else {
-      pixels[i][j] = ColorRGB.VIOLET.getRGB();
+      return ColorRGB.VIOLET.getPacked();
     }
 
   }
@@ -176,7 +441,7 @@ public class ImageUtil {
    * @return an Image object that contains the data for the rainbow
    */
   public static Image generateRainbow(int width, int height, int direction) {
-    int[][][] pixels = new int[height][width][3];
+    int[] pixels = new int[width * height];
     int stripeWidth;
     if (direction == 0) {
       stripeWidth = (int) Math.ceil(width / 7.0);
@@ -191,10 +456,10 @@ public class ImageUtil {
         } else {
           color = ImageUtil.whichColor(i, stripeWidth);
         }
-        ImageUtil.populateRainbow(pixels, color, i, j);
+        pixels[i * width + j] = ImageUtil.rainbowColor(color);
       }
     }
-    return new Image(pixels);
+    return new Image(width, height, pixels);
   }
 
   /**
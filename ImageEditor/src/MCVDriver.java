@@ -1,5 +1,7 @@
+import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.util.Arrays;
 
 import javax.swing.UIManager;
 import javax.swing.UnsupportedLookAndFeelException;
@@ -7,8 +9,8 @@ import javax.swing.UnsupportedLookAndFeelException;
 
 /**
  * This class represents a driver for our MVC model. It has one main method and no other methods.
- * The program can be run in either interactive mode or script mode according to the command line
- * argument. One of these modes must be chosen.
+ * The program can be run in interactive mode, script mode, or batch mode according to the command
+ * line argument. One of these modes must be chosen.
  */
 public class MCVDriver {
   /**
@@ -18,8 +20,9 @@ public class MCVDriver {
    * with. If the incorrect number of arguments is provided the method prints a message to the
    * console and returns.
    *
-   * @param args command line arguments. Options are "-script" followed by a script path or
-   *             "-interactive" to launch a GUI.
+   * @param args command line arguments. Options are "-script" followed by a script path,
+   *             "-batch" followed by a recipe path, an output directory, and input files,
+   *             directories, or patterns, or "-interactive" to launch a GUI.
    */
   public static void main(String[] args) {
     if (args.length < 1) {
@@ -59,6 +62,22 @@ public class MCVDriver {
       } catch (IOException e) {
         System.out.println("Not a valid batch file");
       }
+    } else if (args[0].equals("-batch")) {
+      // In batch mode, run a recipe script on every input file, each with a model of its own
+      if (args.length < 4) {
+        System.out.println("You must specify a recipe path, an output directory, and input files");
+        return;
+      }
+      try {
+        BatchRunner runner = new BatchRunner(BatchRunner.readRecipe(args[1]), new File(args[2]),
+                BatchRunner.DEFAULT_WORKERS);
+        runner.run(BatchRunner.findInputs(Arrays.asList(args).subList(3, args.length)),
+                System.out);
+      } catch (IOException e) {
+        System.out.println("Not a valid batch file");
+      } catch (IllegalArgumentException e) {
+        System.out.println(e.getMessage());
+      }
     } else if (args[0].equals("-interactive")) {
       // In interactive mode, construct a view and a controller with a model + view
       View view = new View("Image Processing");
@@ -68,7 +87,8 @@ public class MCVDriver {
       // Display the view
       view.display();
     } else {
-      System.out.println("You must either specify -script with a script path or -interactive");
+      System.out.println("You must either specify -script with a script path, -batch with a recipe "
+              + "path, output directory, and input files, or -interactive");
     }
   }
 }
@@ -1,208 +1,512 @@
+import java.awt.Dimension;
 import java.awt.image.BufferedImage;
-import java.util.Stack;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CancellationException;
 
 /**
  * This class represents the implementation of the IModel interface. This represents the model in
  * our model, view, controller design.
+ *
+ * <p>When previews are turned on (see {@link #setPreviewSize(int)}), the model also keeps a
+ * downsampled copy of any current image that is larger than the preview size.  Edits are then
+ * applied to the copy straight away and kept pending, and are only applied to the current image
+ * when it is asked for, or when {@link #commit()} is called.  Edits that measure distances in
+ * pixels, such as a blur radius or the number of mosaic seeds, are scaled down for the preview.
+ *
+ * <p>In lazy mode (see {@link #setLazy(boolean)}) edits are only checked when they are made and
+ * kept pending, with no preview.  Files loaded by name are only read when their pixels are needed.
+ * So an image that is replaced by a load, a generated image, or a reset before it is asked for is
+ * never computed, and neither are its edits.  When the pending edits are applied, each run of color
+ * transformations is joined into a single pass (see {@link ColorPipeline}).
  */
 public class Model implements IModel {
+  /**
+   * Default largest number of bytes of pixel data kept for undo and redo, a quarter of the heap.
+   */
+  public static final long DEFAULT_HISTORY_BYTES = Runtime.getRuntime().maxMemory() / 4;
+  /**
+   * Default largest number of undo steps kept.
+   */
+  public static final int DEFAULT_HISTORY_DEPTH = Integer.MAX_VALUE;
+
   /**
    * The current image in the model that was either loaded or generated by the model and can be
    * edited.
    */
   private Image image = null;
   /**
-   * Stack of previous model images.
+   * Previous and undone model images.
+   */
+  private final History history = new History(DEFAULT_HISTORY_BYTES, DEFAULT_HISTORY_DEPTH);
+  /**
+   * Image last returned for display, or null if none has been.
+   */
+  private Image displayed = null;
+  /**
+   * BufferedImage sharing the pixels of the image last returned for display.
+   */
+  private BufferedImage display = null;
+  /**
+   * Pyramid of the image last returned for display, or null if none has been.
+   */
+  private Pyramid pyramid = null;
+  /**
+   * Source of random seeds for mosaics, so that every mosaic can be replayed exactly.
+   */
+  private final Random random = new Random();
+  /**
+   * Largest width and height of the preview in pixels, or 0 if edits are not previewed.
+   */
+  private int previewSize = 0;
+  /**
+   * Downsampled copy of the current image with the pending edits applied, or null if the current
+   * image is not previewed.
    */
-  private Stack<Image> undoStack = new Stack<>();
+  private Image preview = null;
   /**
-   * Stack of model images popped off the undoStack.
+   * Factor by which the width and height of the current image are divided for the preview.
    */
-  private Stack<Image> redoStack = new Stack<>();
+  private int previewFactor = 1;
+  /**
+   * Edits applied to the preview but not yet to the current image, oldest first.
+   */
+  private final List<ImageEditor> pending = new ArrayList<>();
+  /**
+   * Whether edits are kept pending until the current image is asked for.
+   */
+  private boolean lazy = false;
+  /**
+   * File loaded in lazy mode that has not been read yet, or null if the current image has been.
+   */
+  private String pendingFile = null;
+  /**
+   * Width of the current image, known even before a pending file is read, or 0 if there is none.
+   */
+  private int width = 0;
+  /**
+   * Height of the current image, known even before a pending file is read, or 0 if there is none.
+   */
+  private int height = 0;
 
   @Override
   public BufferedImage getImage() throws IllegalStateException {
-    if (image == null) {
+    if (!hasImage()) {
+      throw new IllegalStateException("You must load or generate an image.");
+    }
+    commit();
+    if (displayed != image) {
+      display = ImageUtil.viewBufferImage(image);
+      displayed = image;
+    }
+    return display;
+  }
+
+  @Override
+  public Pyramid getPyramid() throws IllegalStateException {
+    if (!hasImage()) {
       throw new IllegalStateException("You must load or generate an image.");
     }
+    commit();
+    if (pyramid == null || pyramid.getLevel(0) != image) {
+      pyramid = new Pyramid(image);
+    }
+    return pyramid;
+  }
+
+  @Override
+  public BufferedImage getPreview() throws IllegalStateException {
+    if (preview == null) {
+      return getImage();
+    }
+    return ImageUtil.viewBufferImage(preview);
+  }
+
+  @Override
+  public void setPreviewSize(int size) throws IllegalArgumentException {
+    if (size < 0) {
+      throw new IllegalArgumentException("Preview size cannot be negative.");
+    }
+    commit();
+    this.previewSize = size;
+    setImage(this.image);
+  }
+
+  @Override
+  public void setLazy(boolean lazy) {
+    commit();
+    this.lazy = lazy;
+    // previews are not made in lazy mode
+    setImage(this.image);
+  }
+
+  @Override
+  public void commit() {
+    if (pendingFile != null) {
+      Image loaded;
+      try {
+        loaded = ImageUtil.loadImage(pendingFile);
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+      List<ImageEditor> edits = new ArrayList<>(pending);
+      setImage(loaded);
+      pending.addAll(edits);
+    }
+    if (pending.isEmpty()) {
+      return;
+    }
+    List<ImageEditor> steps = lazy ? fuseColors(pending) : pending;
+    // apply every pending edit before recording any, so a failure leaves the history unchanged
+    List<Image> results = new ArrayList<>();
+    Image result = this.image;
     try {
-      int[][][] pixels = image.getRgb();
-      return ImageUtil.getBufferImage(pixels, pixels[0].length, pixels.length);
-    } catch (IllegalStateException e) {
-      throw new IllegalStateException(e.getMessage());
+      for (ImageEditor editor : steps) {
+        result = editor.edit(result);
+        results.add(result);
+      }
+    } catch (CancellationException e) {
+      // the preview still shows the pending edits, so they are kept for the next commit
+      throw e;
+    } catch (RuntimeException e) {
+      // the pending edits are dropped, so the preview goes back to the current image
+      setImage(this.image);
+      throw e;
+    }
+    Image previous = this.image;
+    for (int i = 0; i < steps.size(); i++) {
+      history.record(previous, steps.get(i), results.get(i));
+      previous = results.get(i);
     }
+    // the preview is made again from the full image, so it cannot drift from the real result
+    setImage(result);
+  }
+
+  @Override
+  public void discard() {
+    if (pendingFile != null) {
+      pending.clear();
+    } else if (!pending.isEmpty()) {
+      setImage(this.image);
+    }
+  }
+
+  @Override
+  public boolean hasPending() {
+    return pendingFile != null || !pending.isEmpty();
   }
 
   @Override
   public void loadImage(int[][][] rgb) {
-    emptyUndo();
-    emptyRedo();
-    this.image = new Image(rgb);
+    history.clear();
+    setImage(new Image(rgb));
   }
 
   @Override
-  public void undo() throws IllegalStateException {
-    if (undoStack.empty()) {
-      throw new IllegalStateException("No edits to undo.");
+  public void loadImage(Image image) {
+    history.clear();
+    setImage(image);
+  }
+
+  @Override
+  public void loadImage(String filename) throws IOException {
+    if (!lazy) {
+      loadImage(ImageUtil.loadImage(filename));
+      return;
     }
+    // only the header is read now, so a bad file is still reported straight away
+    Dimension size = ImageUtil.getDimensions(filename);
+    history.clear();
+    setImage(null);
+    pendingFile = filename;
+    width = size.width;
+    height = size.height;
+  }
 
-    redoStack.push(this.image);
-    this.image = undoStack.pop();
+  @Override
+  public void undo() throws IllegalStateException {
+    commit();
+    setImage(history.undo());
   }
 
   @Override
   public void redo() throws IllegalStateException {
-    if (redoStack.empty()) {
-      throw new IllegalStateException("No edits to redo.");
-    }
-
-    undoStack.push(this.image);
-    this.image = redoStack.pop();
+    commit();
+    setImage(history.redo(this.image));
   }
 
   @Override
   public void reset() {
-    this.image = null;
-    emptyUndo();
-    emptyUndo();
+    setImage(null);
+    history.clear();
   }
 
   @Override
   public void blur() throws IllegalStateException {
-    if (this.image == null) {
-      throw new IllegalStateException("You must have loaded an image or generated one before "
-              + "blurring");
-    }
-    emptyRedo();
-    undoStack.push(this.image);
-    ImageEditor b = new Blur();
-    this.image = b.edit(this.image);
+    apply(new Blur(), "blurring");
+  }
+
+  @Override
+  public void blur(int radius) throws IllegalStateException, IllegalArgumentException {
+    // the preview is blurred by the same amount relative to its size
+    int previewRadius = Math.max(1, Math.round((float) radius / previewFactor));
+    apply(new Blur(radius), new Blur(previewRadius), "blurring");
   }
 
   @Override
   public void dither() throws IllegalStateException {
-    if (this.image == null) {
-      throw new IllegalStateException("You must have loaded an image or generated one before "
-              + "dithering");
-    }
-    emptyRedo();
-    undoStack.push(this.image);
-    ImageEditor d = new Dither();
-    this.image = d.edit(this.image);
+    apply(new Dither(), "dithering");
+  }
+
+  @Override
+  public void ditherBayer(int size) throws IllegalStateException, IllegalArgumentException {
+    apply(new BayerDither(size), "dithering");
+  }
+
+  @Override
+  public void ditherBlueNoise() throws IllegalStateException {
+    apply(new BlueNoiseDither(), "dithering");
   }
 
   @Override
   public void mosaic(int seed) throws IllegalStateException, IllegalArgumentException {
-    if (this.image == null) {
-      throw new IllegalStateException("You must have loaded an image or generated one before "
-              + "doing a mosaic");
+    mosaic(seed, random.nextLong());
+  }
+
+  @Override
+  public void mosaic(int seed, long randomSeed) throws IllegalStateException,
+          IllegalArgumentException {
+    ImageEditor mosaic = image -> new Mosaic().edit(image, seed, randomSeed);
+    if (hasImage()) {
+      // check against the current image now, since the mosaic itself may be left pending
+      Mosaic.checkNumSeeds(width, height, seed);
+    }
+    if (preview == null) {
+      apply(mosaic, "doing a mosaic");
+      return;
     }
-    emptyRedo();
-    undoStack.push(this.image);
-    Mosaic m = new Mosaic();
-    this.image = m.edit(this.image, seed);
+    int previewSeeds = (int) Math.max(1, (long) seed * preview.getWidth() * preview.getHeight()
+            / ((long) width * height));
+    apply(mosaic, image -> new Mosaic().edit(image, previewSeeds, randomSeed), "doing a mosaic");
   }
 
   @Override
   public void sharpen() throws IllegalStateException {
-    if (this.image == null) {
-      throw new IllegalStateException("You must have loaded an image or generated one before "
-              + "sharpening");
-    }
-    emptyRedo();
-    undoStack.push(this.image);
-    ImageEditor s = new Sharpen();
-    this.image = s.edit(this.image);
+    apply(new Sharpen(), "sharpening");
   }
 
   @Override
   public void greyscale() throws IllegalStateException {
-    if (this.image == null) {
-      throw new IllegalStateException("You must have loaded an image or generated one before "
-              + "changing the color");
-    }
-    emptyRedo();
-    undoStack.push(this.image);
-    ImageEditor gs = new GreyScale();
-    this.image = gs.edit(this.image);
+    apply(new GreyScale(), "changing the color");
   }
 
   @Override
   public void sepia() throws IllegalStateException {
-    if (this.image == null) {
-      throw new IllegalStateException("You must have loaded an image or generated one before "
-              + "changing the color");
-    }
-    emptyRedo();
-    undoStack.push(this.image);
-    ImageEditor s = new Sepia();
-    this.image = s.edit(this.image);
+    apply(new Sepia(), "changing the color");
+  }
+
+  @Override
+  public void transformColors(List<TransformColor> transforms) throws IllegalStateException,
+          IllegalArgumentException {
+    apply(new ColorPipeline(transforms), "changing the color");
+  }
+
+  @Override
+  public void setThreads(int threads) throws IllegalArgumentException {
+    RowBands.setThreads(threads);
   }
 
   @Override
   public void generateVertRainbow(int width, int height) throws IllegalArgumentException {
-    emptyUndo();
-    emptyRedo();
+    history.clear();
     VerticalRainbow vr = new VerticalRainbow();
-    this.image = vr.generate(width, height);
+    setImage(vr.generate(width, height));
   }
 
   @Override
   public void generateHorizRainbow(int width, int height) throws IllegalArgumentException {
-    emptyUndo();
-    emptyRedo();
+    history.clear();
     HorizontalRainbow hr = new HorizontalRainbow();
-    this.image = hr.generate(width, height);
+    setImage(hr.generate(width, height));
   }
 
   @Override
   public void generateCheckers(int size) throws IllegalArgumentException {
-    emptyUndo();
-    emptyRedo();
+    history.clear();
     Generator c = new Checkers();
-    this.image = c.generate(size);
+    setImage(c.generate(size));
   }
 
   @Override
   public void generateFrenchFlag(int size) throws IllegalArgumentException {
-    emptyUndo();
-    emptyRedo();
+    history.clear();
     Generator ff = new FrenchFlag();
-    this.image = ff.generate(size);
+    setImage(ff.generate(size));
   }
 
   @Override
   public void generateGreekFlag(int size) throws IllegalArgumentException {
-    emptyUndo();
-    emptyRedo();
+    history.clear();
     Generator gf = new GreekFlag();
-    this.image = gf.generate(size);
+    setImage(gf.generate(size));
   }
 
   @Override
   public void generateSwissFlag(int size) throws IllegalArgumentException {
-    emptyUndo();
-    emptyRedo();
+    history.clear();
     Generator sf = new SwissFlag();
-    this.image = sf.generate(size);
+    setImage(sf.generate(size));
+  }
+
+  @Override
+  public void setHistoryLimits(long maxBytes, int maxDepth) throws IllegalArgumentException {
+    history.setLimits(maxBytes, maxDepth, this.image);
+  }
+
+  @Override
+  public void setHistoryCompression(int level) throws IllegalArgumentException {
+    history.setCompression(level);
+  }
+
+  @Override
+  public void setHistoryCheckpoints(int interval) throws IllegalArgumentException {
+    history.setCheckpointInterval(interval);
+  }
+
+  @Override
+  public long getHistoryBytes() {
+    return history.getBytes();
+  }
+
+  @Override
+  public int getHistoryDepth() {
+    return history.getUndoDepth();
+  }
+
+  @Override
+  public int getHistoryRedoDepth() {
+    return history.getRedoDepth();
+  }
+
+  /**
+   * Edit the current image with the given editor, which is also used for the preview.
+   *
+   * @param editor to be applied to the current image and the preview
+   * @param action description of the edit for the error message, such as "blurring"
+   * @throws IllegalStateException if there is no current image
+   */
+  private void apply(ImageEditor editor, String action) throws IllegalStateException {
+    apply(editor, editor, action);
   }
 
   /**
-   * Empties the undo stack.  If undo stack is already empty, does nothing.
+   * Edit the current image with the given editor and record the edit so that it can be undone.
+   * The edit is done before anything is recorded, so if it fails the model is left unchanged.  The
+   * editor may be applied again to rebuild images for undo, so it must give the same result every
+   * time.  If the current image is previewed, only the preview is edited now and the edit is left
+   * pending.  In lazy mode nothing is edited now and the edit is left pending.
+   *
+   * @param editor        to be applied to the current image
+   * @param previewEditor to be applied to the preview instead
+   * @param action        description of the edit for the error message, such as "blurring"
+   * @throws IllegalStateException if there is no current image
    */
-  private void emptyUndo() {
-    while (!undoStack.empty()) {
-      undoStack.pop();
+  private void apply(ImageEditor editor, ImageEditor previewEditor, String action)
+          throws IllegalStateException {
+    if (!hasImage()) {
+      throw new IllegalStateException("You must have loaded an image or generated one before "
+              + action);
+    }
+    if (lazy) {
+      pending.add(editor);
+      return;
+    }
+    if (preview != null) {
+      preview = previewEditor.edit(preview);
+      pending.add(editor);
+      return;
     }
+    Image result = editor.edit(this.image);
+    history.record(this.image, editor, result);
+    this.image = result;
   }
 
   /**
-   * Empties the redo stack.  If redo stack is already empty, does nothing.
+   * Return whether there is a current image, even if it has not been read from its file yet.
+   *
+   * @return true if there is a current image
    */
-  private void emptyRedo() {
-    while (!redoStack.empty()) {
-      redoStack.pop();
+  private boolean hasImage() {
+    return image != null || pendingFile != null;
+  }
+
+  /**
+   * Join each run of color transformations in the given edits into a single pipeline, so that it
+   * is applied in one pass.  Other edits are kept as they are.
+   *
+   * @param edits to be joined, oldest first
+   * @return joined edits, oldest first
+   */
+  private static List<ImageEditor> fuseColors(List<ImageEditor> edits) {
+    List<ImageEditor> steps = new ArrayList<>();
+    List<TransformColor> colors = new ArrayList<>();
+    for (ImageEditor edit : edits) {
+      if (edit instanceof TransformColor) {
+        colors.add((TransformColor) edit);
+        continue;
+      }
+      if (edit instanceof ColorPipeline) {
+        colors.addAll(((ColorPipeline) edit).getTransforms());
+        continue;
+      }
+      addColors(steps, colors);
+      steps.add(edit);
     }
+    addColors(steps, colors);
+    return steps;
   }
 
+  /**
+   * Add a run of color transformations to a list of edits as a single edit, then clear the run.
+   * If the run is empty, does nothing.
+   *
+   * @param steps  list the edit is added to
+   * @param colors color transformations in the order they are applied
+   */
+  private static void addColors(List<ImageEditor> steps, List<TransformColor> colors) {
+    if (colors.size() == 1) {
+      steps.add(colors.get(0));
+    } else if (colors.size() > 1) {
+      steps.add(new ColorPipeline(colors));
+    }
+    colors.clear();
+  }
+
+  /**
+   * Make the given image the current image, dropping any pending edits and any file not yet read,
+   * and rebuild the preview for it.  The preview is made even if the operation that produced the
+   * image is cancelled, since the image has already changed.
+   *
+   * @param image new current image, or null for none
+   */
+  private void setImage(Image image) {
+    this.image = image;
+    this.pending.clear();
+    this.pendingFile = null;
+    this.width = image == null ? 0 : image.getWidth();
+    this.height = image == null ? 0 : image.getHeight();
+    this.preview = null;
+    this.previewFactor = 1;
+    if (image == null || previewSize == 0 || lazy) {
+      return;
+    }
+    int factor = (Math.max(image.getWidth(), image.getHeight()) + previewSize - 1) / previewSize;
+    if (factor > 1) {
+      Progress.detach(() -> preview = ImageUtil.downsample(image, factor));
+      previewFactor = factor;
+    }
+  }
 }
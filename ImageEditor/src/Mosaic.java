@@ -1,18 +1,21 @@
-import java.util.ArrayList;
-import java.util.List;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Random;
 
 /**
  * This class represents a mosaic operation. This is an image process that gives an image a "stained
  * glass window" effect in which the picture consists of joined, small irregular-shaped clusters of
- * colors.
+ * colors.  Classification, cluster averaging, and rendering are split into bands of rows that are
+ * processed in parallel (see {@link RowBands}).
  */
 public class Mosaic {
   /**
    * Create an image mosaic. This is done by randomly picking a set of points in the image called
    * seeds. Each pixel in the image is then paired to the seed that is closest to it (by euclidean
    * distance). This creates a cluster of pixels for each seed. Then the color of each pixel in the
-   * image is replaced with the average color of its cluster.
+   * image is replaced with the average color of its cluster.  Closest seeds are found with a
+   * {@link SeedGrid}, so the cost grows with the number of pixels rather than pixels times seeds.
    *
    * @param image    the original image to be operated on
    * @param numSeeds the number of seeds for the operation
@@ -21,105 +24,238 @@ public class Mosaic {
    *                                  image
    */
   public Image edit(Image image, int numSeeds) throws IllegalArgumentException {
-    if (numSeeds < 1) {
-      throw new IllegalArgumentException("Seed must be greater than 0");
-    }
-    checkNumSeeds(image, numSeeds);
-    // pick our random pixel seeds
-    List<Point2D> seeds = pickSeeds(image, numSeeds);
+    return edit(image, numSeeds, new Random());
+  }
+
+  /**
+   * Create an image mosaic with seeds picked by a random number generator started from the given
+   * random seed.  The same image, number of seeds, and random seed always produce the same mosaic.
+   *
+   * @param image      the original image to be operated on
+   * @param numSeeds   the number of seeds for the operation
+   * @param randomSeed starting value of the random number generator used to pick seeds
+   * @return an image object with the data for the mosaic image
+   * @throws IllegalArgumentException if numSeeds is greater than the number of pixels in the given
+   *                                  image
+   */
+  public Image edit(Image image, int numSeeds, long randomSeed) throws IllegalArgumentException {
+    return edit(image, numSeeds, new Random(randomSeed));
+  }
+
+  /**
+   * Create an image mosaic with seeds picked by the given random number generator.
+   *
+   * @param image    the original image to be operated on
+   * @param numSeeds the number of seeds for the operation
+   * @param random   random number generator used to pick seeds
+   * @return an image object with the data for the mosaic image
+   * @throws IllegalArgumentException if numSeeds is greater than the number of pixels in the given
+   *                                  image
+   */
+  private Image edit(Image image, int numSeeds, Random random) throws IllegalArgumentException {
+    checkNumSeeds(image.getWidth(), image.getHeight(), numSeeds);
     int height = image.getHeight();
     int width = image.getWidth();
-    // variable that holds the classification to a seed for a pixel
-    int classified;
-    // pixel array of original image
-    int[][][] rgb = image.getRgb();
+    // pick our random pixel seeds
+    int[] seeds = pickSeeds(image, numSeeds, random);
+    // spatial index over the seeds for finding the closest seed to a pixel
+    int[] seedRows = new int[numSeeds];
+    int[] seedColumns = new int[numSeeds];
+    for (int i = 0; i < numSeeds; i++) {
+      seedRows[i] = seeds[i] / width;
+      seedColumns[i] = seeds[i] % width;
+    }
+    SeedGrid grid = new SeedGrid(height, width, seedRows, seedColumns);
+    // classification to a seed for each pixel, in row-major order
+    int[] classified = new int[width * height];
+    // partial cluster sums for each band of rows, merged once every band is done
+    int bands = RowBands.count(height);
+    ClusterSums[] partials = new ClusterSums[bands];
+    IntBuffer input = image.getPixelView();
+    // classification and rendering each report every row
+    Progress.current().expect(2L * height);
+    RowBands.forEach(height, bands, (band, startRow, endRow) ->
+            partials[band] = classifyRows(grid, input, width, classified, startRow, endRow));
     // variable that keeps track of total sum for each rgb value for a seed
-    int[][] sum = new int[numSeeds][3];
-    // a 2D array that has the classification for each pixel
-    int[][] classifiedImage = new int[height][width];
+    long[] sum = new long[numSeeds * 3];
     // number of entries for each seed
     int[] entries = new int[numSeeds];
-    // loop through each pixel in the original image
-    for (int r = 0; r < height; r++) {
-      for (int c = 0; c < width; c++) {
-        // create a point object for the pixel
-        Point2D point = new Point2D(r, c);
-        // classify the point
-        classified = point.minDistance(seeds);
-        // update classifiedImage array and number of entries
-        classifiedImage[r][c] = classified;
-        entries[classified] += 1;
+    for (ClusterSums partial : partials) {
+      for (int i = 0; i < partial.entries.length; i++) {
+        entries[partial.first + i] += partial.entries[i];
         for (int k = 0; k < 3; k++) {
-          // update sum array for appropriate channel
-          sum[classified][k] += rgb[r][c][k];
+          sum[(partial.first + i) * 3 + k] += partial.sum[i * 3 + k];
         }
       }
     }
-    // get the average of each rgb value for a cluster
-    int[][] averaged = new int[numSeeds][3];
+    // get the average color of each cluster
+    int[] averaged = new int[numSeeds];
     for (int i = 0; i < numSeeds; i++) {
-      for (int k = 0; k < 3; k++) {
-        averaged[i][k] = Math.round(sum[i][k] / entries[i]);
+      averaged[i] = Image.pack((int) (sum[i * 3] / entries[i]),
+              (int) (sum[i * 3 + 1] / entries[i]), (int) (sum[i * 3 + 2] / entries[i]));
+    }
+    return generateImage(classified, averaged, height, width);
+  }
+
+  /**
+   * This class holds the color sums and pixel counts of the clusters touched by one band of rows.
+   * Seeds are numbered in row-major order, so a band only touches a narrow range of seeds and
+   * only that range is stored.
+   */
+  private static class ClusterSums {
+    /**
+     * Index of the first seed in the range.
+     */
+    private final int first;
+    /**
+     * Sum of each channel for each seed in the range, three interleaved channels per seed.
+     */
+    private final long[] sum;
+    /**
+     * Number of pixels for each seed in the range.
+     */
+    private final int[] entries;
+
+    /**
+     * Construct empty sums for the seeds from first to last (inclusive).
+     *
+     * @param first index of the first seed in the range
+     * @param last  index of the last seed in the range
+     */
+    private ClusterSums(int first, int last) {
+      this.first = first;
+      this.sum = new long[(last - first + 1) * 3];
+      this.entries = new int[last - first + 1];
+    }
+  }
+
+  /**
+   * Classify each pixel in the rows from startRow (inclusive) to endRow (exclusive) to its closest
+   * seed, and add up the colors of the pixels in each cluster.
+   *
+   * @param grid       spatial index over the seeds
+   * @param input      read-only view of the pixels of the original image
+   * @param width      of the original image
+   * @param classified array receiving the classification of each pixel
+   * @param startRow   first row to classify
+   * @param endRow     row after the last row to classify
+   * @return color sums and pixel counts of the clusters touched by these rows
+   */
+  private ClusterSums classifyRows(SeedGrid grid, IntBuffer input, int width, int[] classified,
+                                   int startRow, int endRow) {
+    int first = Integer.MAX_VALUE;
+    int last = Integer.MIN_VALUE;
+    for (int r = startRow; r < endRow; r++) {
+      for (int c = 0; c < width; c++) {
+        int seed = grid.nearest(r, c);
+        classified[r * width + c] = seed;
+        first = Math.min(first, seed);
+        last = Math.max(last, seed);
       }
     }
-    return generateImage(classifiedImage, averaged, height, width);
+    ClusterSums sums = new ClusterSums(first, last);
+    for (int i = startRow * width; i < endRow * width; i++) {
+      int seed = classified[i] - first;
+      int pixel = input.get(i);
+      sums.entries[seed]++;
+      sums.sum[seed * 3] += Image.red(pixel);
+      sums.sum[seed * 3 + 1] += Image.green(pixel);
+      sums.sum[seed * 3 + 2] += Image.blue(pixel);
+    }
+    return sums;
   }
 
   /**
-   * Randomly pick seeds for the mosaic algorithm. The seeds are returned in a list that are of size
-   * = numSeeds. There are no duplicates allowed in the returned list.
+   * Randomly pick seeds for the mosaic algorithm. Each seed is returned as the index of a pixel
+   * (row * width + column) and there are no duplicates.  Picked pixels are tracked in a bit set, so
+   * checking for duplicates takes constant time.  When more than half of the pixels are needed, the
+   * pixels that are not seeds are picked instead and every other pixel becomes a seed, so that
+   * random picks rarely land on a pixel that is already taken.  The seeds are returned sorted, so
+   * seeds that are close in index are also close in the image.
    *
    * @param i        the image that is being mosaic'd
    * @param numSeeds the number of seeds for the mosaic operation
-   * @return a list of Point2D objects that represents the seeds to be used
+   * @param random   random number generator used to pick seeds
+   * @return an array of the pixel indices of the seeds to be used
    */
-  private List<Point2D> pickSeeds(Image i, int numSeeds) {
-    Random r = new Random();
-    List<Point2D> seeds = new ArrayList<>();
-    while (seeds.size() < numSeeds) {
-      int row = r.nextInt(i.getHeight());
-      int column = r.nextInt(i.getWidth());
-      Point2D seed = new Point2D(row, column);
-      if (!(seeds.contains(seed))) {
-        seeds.add(seed);
+  private int[] pickSeeds(Image i, int numSeeds, Random random) {
+    int numPixels = i.getWidth() * i.getHeight();
+    boolean pickSeeds = numSeeds <= numPixels / 2;
+    int numPicks = pickSeeds ? numSeeds : numPixels - numSeeds;
+    BitSet picked = new BitSet(numPixels);
+    int[] seeds = new int[numSeeds];
+    int count = 0;
+    while (count < numPicks) {
+      int pixel = random.nextInt(numPixels);
+      if (!picked.get(pixel)) {
+        picked.set(pixel);
+        if (pickSeeds) {
+          seeds[count] = pixel;
+        }
+        count++;
       }
     }
+    if (!pickSeeds) {
+      int pixel = picked.nextClearBit(0);
+      for (int k = 0; k < numSeeds; k++) {
+        seeds[k] = pixel;
+        pixel = picked.nextClearBit(pixel + 1);
+      }
+    } else {
+      Arrays.sort(seeds);
+    }
     return seeds;
   }
 
   /**
-   * Generate the new image based the mosaic algorithm. Returns this new image.
+   * Generate the new image based the mosaic algorithm. Returns this new image.  Bands of rows are
+   * generated in parallel.
    *
-   * @param classified a 2D array that contains the classification for each pixel
-   * @param averaged   a 2D array that has the averaged rgb value for each classification
+   * @param classified an array that contains the classification for each pixel
+   * @param averaged   an array that has the packed average color for each classification
    * @param height     the height of the image to be generated
    * @param width      the width of the image to be generated
    * @return a mosaic'd image
    */
-  private Image generateImage(int[][] classified, int[][] averaged, int height, int width) {
-    int[][][] newImage = new int[height][width][3];
-    for (int r = 0; r < height; r++) {
-      for (int c = 0; c < width; c++) {
-        int classification = classified[r][c];
-        for (int k = 0; k < 3; k++) {
-          newImage[r][c][k] = averaged[classification][k];
-        }
+  private Image generateImage(int[] classified, int[] averaged, int height, int width) {
+    int[] newImage = new int[width * height];
+    RowBands.forEach(height, (band, startRow, endRow) -> {
+      for (int i = startRow * width; i < endRow * width; i++) {
+        newImage[i] = averaged[classified[i]];
       }
+    });
+    return new Image(width, height, newImage);
+  }
+
+  /**
+   * Checks that the number of seeds argument for mosaic is at least 1.  If it is not, an illegal
+   * argument exception is thrown.  This lets a mosaic be checked before the image it will edit is
+   * known.
+   *
+   * @param numSeeds for mosaic operation
+   * @throws IllegalArgumentException if numSeeds is less than 1
+   */
+  public static void checkNumSeeds(int numSeeds) throws IllegalArgumentException {
+    if (numSeeds < 1) {
+      throw new IllegalArgumentException("Seed must be greater than 0");
     }
-    return new Image(newImage);
   }
 
   /**
-   * Checks that the number of seeds argument for mosaic does not exceed the number of pixels in the
-   * image.  If the number of seeds does exceed the number of pixels, an illegal argument exception
-   * is thrown.
+   * Checks that the number of seeds argument for mosaic is at least 1 and does not exceed the
+   * number of pixels in the image.  If it does not, an illegal argument exception is thrown.  This
+   * lets a mosaic be checked before it is done, even before the image itself has been read.
    *
-   * @param image    being edited by mosaic
+   * @param width    of the image being edited by mosaic
+   * @param height   of the image being edited by mosaic
    * @param numSeeds for mosaic operation
-   * @throws IllegalArgumentException if numSeeds exceeds the number of pixels in the image
+   * @throws IllegalArgumentException if numSeeds is less than 1 or exceeds the number of pixels in
+   *                                  the image
    */
-  private void checkNumSeeds(Image image, int numSeeds) throws IllegalArgumentException {
-    int numPixels = image.getWidth() * image.getHeight();
+  public static void checkNumSeeds(int width, int height, int numSeeds)
+          throws IllegalArgumentException {
+    checkNumSeeds(numSeeds);
+    long numPixels = (long) width * height;
     if (numSeeds > numPixels) {
       throw new IllegalArgumentException("Number of seeds cannot exceed number of pixels in the"
               + " image.");
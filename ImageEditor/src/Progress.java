@@ -0,0 +1,177 @@
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntConsumer;
+
+/**
+ * This class tracks the progress of a long-running operation and lets it be cancelled.  An
+ * operation declares how many units of work it expects to do (usually rows), and reports each unit
+ * as it finishes.  The percentage done is passed to a listener whenever it changes.  Once the
+ * operation has been cancelled, the next report throws a CancellationException, which stops the
+ * operation.
+ *
+ * <p>The progress of an operation belongs to the thread that started it (see
+ * {@link #begin(Progress)}), and editors find it with {@link #current()}, so nothing needs to be
+ * passed through the model.  Code that hands work to other threads, such as {@link RowBands},
+ * reads the current progress first and reports to it from those threads.  Reports may come from
+ * any thread.
+ */
+public class Progress {
+  /**
+   * Progress of the operation running on each thread.
+   */
+  private static final ThreadLocal<Progress> CURRENT = new ThreadLocal<>();
+  /**
+   * Progress used when no operation is being tracked.  It ignores every report.
+   */
+  private static final Progress NONE = new Progress(percent -> { });
+
+  /**
+   * Listener told the percentage done whenever it changes.
+   */
+  private final IntConsumer listener;
+  /**
+   * Units of work expected so far.
+   */
+  private final AtomicLong expected = new AtomicLong();
+  /**
+   * Units of work done so far.
+   */
+  private final AtomicLong done = new AtomicLong();
+  /**
+   * Whether the operation has been cancelled.
+   */
+  private volatile boolean cancelled;
+  /**
+   * Percentage last passed to the listener, or -1 if none has been.
+   */
+  private int percent = -1;
+
+  /**
+   * Construct the progress of a new operation.
+   *
+   * @param listener told the percentage done (0-100) whenever it changes, from any thread
+   */
+  public Progress(IntConsumer listener) {
+    this.listener = listener;
+  }
+
+  /**
+   * Return the progress of the operation running on the calling thread.  If no operation is being
+   * tracked, returns a progress that ignores every report and is never cancelled.
+   *
+   * @return progress of the current operation
+   */
+  public static Progress current() {
+    Progress progress = CURRENT.get();
+    return progress == null ? NONE : progress;
+  }
+
+  /**
+   * Start tracking the operation run by the calling thread with the given progress.
+   *
+   * @param progress of the operation
+   */
+  public static void begin(Progress progress) {
+    CURRENT.set(progress);
+  }
+
+  /**
+   * Stop tracking the operation run by the calling thread.
+   */
+  public static void end() {
+    CURRENT.remove();
+  }
+
+  /**
+   * Run work on the calling thread without tracking it, so it is neither reported nor cancelled.
+   * This is for bookkeeping that must finish once an operation has taken effect.
+   *
+   * @param work to be run
+   */
+  public static void detach(Runnable work) {
+    Progress progress = CURRENT.get();
+    CURRENT.remove();
+    try {
+      work.run();
+    } finally {
+      if (progress != null) {
+        CURRENT.set(progress);
+      }
+    }
+  }
+
+  /**
+   * Add to the units of work the operation expects to do.
+   *
+   * @param units of work to be added
+   */
+  public void expect(long units) {
+    if (this == NONE) {
+      return;
+    }
+    expected.addAndGet(units);
+    report();
+  }
+
+  /**
+   * Report units of work done.
+   *
+   * @param units of work done
+   * @throws CancellationException if the operation has been cancelled
+   */
+  public void advance(long units) throws CancellationException {
+    if (this == NONE) {
+      return;
+    }
+    check();
+    done.addAndGet(units);
+    report();
+  }
+
+  /**
+   * Throw if the operation has been cancelled.
+   *
+   * @throws CancellationException if the operation has been cancelled
+   */
+  public void check() throws CancellationException {
+    if (cancelled) {
+      throw new CancellationException("Operation cancelled.");
+    }
+  }
+
+  /**
+   * Cancel the operation.  It stops at its next report.
+   */
+  public void cancel() {
+    if (this != NONE) {
+      cancelled = true;
+    }
+  }
+
+  /**
+   * Return whether the operation has been cancelled.
+   *
+   * @return true if the operation has been cancelled
+   */
+  public boolean isCancelled() {
+    return cancelled;
+  }
+
+  /**
+   * Pass the percentage done to the listener if it has changed.
+   */
+  private void report() {
+    long total = expected.get();
+    if (total <= 0) {
+      return;
+    }
+    int current = (int) Math.min(100, done.get() * 100 / total);
+    synchronized (this) {
+      if (current == percent) {
+        return;
+      }
+      percent = current;
+    }
+    listener.accept(current);
+  }
+}
@@ -0,0 +1,166 @@
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This class represents an image together with smaller copies of it, each half the width and
+ * height of the one before, down to a single pixel.  Together they form a mipmap pyramid that lets
+ * a large image be drawn at any size by scaling the nearest copy, rather than the whole image.
+ *
+ * <p>Level 0 is the image itself and level k is 2^k times smaller.  Levels are only built when
+ * they are first asked for, each from the level above it (see {@link ImageUtil#downsample(Image,
+ * int)}), and are then kept.  A pyramid may be used from several threads, and a level being built
+ * does not stop other threads from reading the levels already built.
+ */
+public class Pyramid {
+  /**
+   * Levels built so far, starting with the image itself.
+   */
+  private final List<Image> levels = new ArrayList<>();
+  /**
+   * BufferedImages sharing the pixels of each level, or null where none has been made yet.
+   */
+  private final List<BufferedImage> views = new ArrayList<>();
+  /**
+   * Number of levels in this pyramid.
+   */
+  private final int count;
+
+  /**
+   * Construct a pyramid of the given image.  Only the image itself is kept until other levels are
+   * asked for.
+   *
+   * @param image at the base of the pyramid
+   */
+  public Pyramid(Image image) {
+    levels.add(image);
+    views.add(null);
+    int size = Math.max(image.getWidth(), image.getHeight());
+    int levelCount = 1;
+    while (size > 1) {
+      size = (size + 1) / 2;
+      levelCount++;
+    }
+    this.count = levelCount;
+  }
+
+  /**
+   * Return the width of the image at the base of this pyramid.
+   *
+   * @return width in pixels
+   */
+  public int getWidth() {
+    return levels.get(0).getWidth();
+  }
+
+  /**
+   * Return the height of the image at the base of this pyramid.
+   *
+   * @return height in pixels
+   */
+  public int getHeight() {
+    return levels.get(0).getHeight();
+  }
+
+  /**
+   * Return the number of levels in this pyramid, from the image itself down to a single pixel.
+   *
+   * @return number of levels
+   */
+  public int getLevelCount() {
+    return count;
+  }
+
+  /**
+   * Return the level to draw from when the image is shown at the given zoom, which is the smallest
+   * level that is still at least as large as the image on screen.
+   *
+   * @param zoom size on screen relative to the image itself, such as 0.5 for half size
+   * @return level to draw from
+   * @throws IllegalArgumentException if zoom is not positive
+   */
+  public int levelFor(double zoom) throws IllegalArgumentException {
+    if (!(zoom > 0)) {
+      throw new IllegalArgumentException("Zoom must be greater than 0.");
+    }
+    int level = 0;
+    while (level + 1 < count && zoom * (1L << (level + 1)) <= 1) {
+      level++;
+    }
+    return level;
+  }
+
+  /**
+   * Return the level nearest to the given one that has already been built, so that it can be
+   * drawn without waiting.  Levels are built in order, so this is the given level if it has been
+   * built, or otherwise the smallest level built so far.
+   *
+   * @param level wanted, 0 for the image itself
+   * @return level that has been built, at most the given level
+   * @throws IllegalArgumentException if the level is not in this pyramid
+   */
+  public synchronized int getBuiltLevel(int level) throws IllegalArgumentException {
+    checkLevel(level);
+    return Math.min(level, levels.size() - 1);
+  }
+
+  /**
+   * Return a level of this pyramid, building it and any levels above it that have not been built.
+   *
+   * @param level to be returned, 0 for the image itself
+   * @return image of the level
+   * @throws IllegalArgumentException if the level is not in this pyramid
+   */
+  public Image getLevel(int level) throws IllegalArgumentException {
+    checkLevel(level);
+    while (true) {
+      Image source;
+      int next;
+      synchronized (this) {
+        if (level < levels.size()) {
+          return levels.get(level);
+        }
+        next = levels.size();
+        source = levels.get(next - 1);
+      }
+      // build outside the lock, so levels already built can still be read meanwhile
+      Image built = ImageUtil.downsample(source, 2);
+      synchronized (this) {
+        if (levels.size() == next) {
+          levels.add(built);
+          views.add(null);
+        }
+      }
+    }
+  }
+
+  /**
+   * Return a BufferedImage sharing the pixels of a level of this pyramid, building the level if
+   * necessary.  The same BufferedImage is returned each time, and it must never be drawn on.
+   *
+   * @param level to be returned, 0 for the image itself
+   * @return BufferedImage of the level
+   * @throws IllegalArgumentException if the level is not in this pyramid
+   */
+  public BufferedImage getLevelImage(int level) throws IllegalArgumentException {
+    Image image = getLevel(level);
+    synchronized (this) {
+      if (views.get(level) == null) {
+        views.set(level, ImageUtil.viewBufferImage(image));
+      }
+      return views.get(level);
+    }
+  }
+
+  /**
+   * Verify that a level is in this pyramid.
+   *
+   * @param level to be checked
+   * @throws IllegalArgumentException if the level is not in this pyramid
+   */
+  private void checkLevel(int level) throws IllegalArgumentException {
+    if (level < 0 || level >= count) {
+      throw new IllegalArgumentException("Pyramid level must be from 0 to " + (count - 1) + ".");
+    }
+  }
+}
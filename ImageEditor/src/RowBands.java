@@ -0,0 +1,236 @@
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * This class runs per-row image work on several threads.  The rows of an image are split into
+ * bands of consecutive rows and the bands are processed in parallel by a shared fork/join pool.
+ * Editors use it for work where each output row can be computed independently, so the result is
+ * the same no matter how many threads are used.  The number of threads is a process-wide setting
+ * that defaults to the number of available processors.
+ *
+ * <p>Each finished band is reported to the progress of the operation that started the work (see
+ * {@link Progress}), so editors only need to say how many rows they expect to process.  Rows are
+ * split into several bands even on one thread so that progress is reported along the way, and a
+ * cancelled operation stops before its next band.
+ *
+ * <p>Changing the number of threads replaces the pool.  Work already running keeps the pool it
+ * started on, and the old pool is shut down once no work is using it.
+ */
+public class RowBands {
+  /**
+   * Number of bands created per thread, so that uneven bands still keep every thread busy.
+   */
+  private static final int BANDS_PER_THREAD = 4;
+  /**
+   * Smallest number of bands created, so that progress is reported in steps of a few percent.
+   */
+  private static final int MIN_BANDS = 16;
+  /**
+   * Number of threads used to process bands.
+   */
+  private static int threads = Runtime.getRuntime().availableProcessors();
+  /**
+   * Pool that processes bands, created when first needed.
+   */
+  private static ForkJoinPool pool;
+  /**
+   * Number of calls using each pool, so that a replaced pool is only shut down once it is idle.
+   */
+  private static final Map<ForkJoinPool, Integer> users = new IdentityHashMap<>();
+
+  /**
+   * This interface represents work done on one band of rows.
+   */
+  public interface Band {
+    /**
+     * Process the rows from startRow (inclusive) to endRow (exclusive).
+     *
+     * @param index    of this band, from 0 up to the number of bands
+     * @param startRow first row of this band
+     * @param endRow   row after the last row of this band
+     */
+    void run(int index, int startRow, int endRow);
+  }
+
+  /**
+   * Set the number of threads used to process bands.  One thread processes all rows on the calling
+   * thread.
+   *
+   * @param count number of threads
+   * @throws IllegalArgumentException if count is less than 1
+   */
+  public static synchronized void setThreads(int count) throws IllegalArgumentException {
+    checkThreads(count);
+    if (count != threads && pool != null) {
+      // work still running on the old pool shuts it down when it finishes
+      if (!users.containsKey(pool)) {
+        pool.shutdown();
+      }
+      pool = null;
+    }
+    threads = count;
+  }
+
+  /**
+   * Check that a number of threads can be used to process bands, so that it can be checked before
+   * it is set.
+   *
+   * @param count number of threads
+   * @throws IllegalArgumentException if count is less than 1
+   */
+  public static void checkThreads(int count) throws IllegalArgumentException {
+    if (count < 1) {
+      throw new IllegalArgumentException("Number of threads must be greater than 0");
+    }
+  }
+
+  /**
+   * Return the number of threads used to process bands.
+   *
+   * @return number of threads
+   */
+  public static synchronized int getThreads() {
+    return threads;
+  }
+
+  /**
+   * Return the number of bands that a given number of rows is split into.  Work that keeps partial
+   * results per band can use this to size its arrays.
+   *
+   * @param rows number of rows to be processed
+   * @return number of bands
+   */
+  public static int count(int rows) {
+    return Math.max(1, Math.min(rows, Math.max(MIN_BANDS, getThreads() * BANDS_PER_THREAD)));
+  }
+
+  /**
+   * Split the given number of rows into bands and run the given work on every band.  Returns once
+   * every band has been processed.  If the work throws an exception on any band, that exception is
+   * thrown from this method.
+   *
+   * @param rows number of rows to be processed
+   * @param band work to run on each band
+   * @throws CancellationException if the calling thread is interrupted while waiting, or if the
+   *                               current operation is cancelled
+   */
+  public static void forEach(int rows, Band band) throws CancellationException {
+    forEach(rows, count(rows), band);
+  }
+
+  /**
+   * Split the given number of rows into the given number of bands and run the given work on every
+   * band.  Work that keeps partial results per band should get the number of bands from
+   * {@link #count(int)} once and pass it here, so the number cannot change in between.
+   *
+   * @param rows  number of rows to be processed
+   * @param count number of bands, at least 1 and at most rows
+   * @param band  work to run on each band
+   * @throws CancellationException if the calling thread is interrupted while waiting, or if the
+   *                               current operation is cancelled
+   */
+  public static void forEach(int rows, int count, Band band) throws CancellationException {
+    Progress progress = Progress.current();
+    if (getThreads() == 1) {
+      for (int i = 0; i < count; i++) {
+        runBand(band, progress, i, (int) ((long) rows * i / count),
+                (int) ((long) rows * (i + 1) / count));
+      }
+      return;
+    }
+    List<Callable<Void>> tasks = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      int index = i;
+      int startRow = (int) ((long) rows * i / count);
+      int endRow = (int) ((long) rows * (i + 1) / count);
+      tasks.add(() -> {
+        runBand(band, progress, index, startRow, endRow);
+        return null;
+      });
+    }
+    invokeAll(tasks);
+  }
+
+  /**
+   * Run the given tasks on the shared pool and wait for all of them.  If any task throws an
+   * exception, that exception is thrown from this method.
+   *
+   * @param tasks to be run
+   * @throws CancellationException if the calling thread is interrupted while waiting
+   */
+  public static void invokeAll(List<Callable<Void>> tasks) throws CancellationException {
+    ForkJoinPool current = acquirePool();
+    try {
+      for (Future<Void> future : current.invokeAll(tasks)) {
+        future.get();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new CancellationException("Operation interrupted.");
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw new IllegalStateException(cause);
+    } finally {
+      releasePool(current);
+    }
+  }
+
+  /**
+   * Run the work on one band and report its rows to the given progress.
+   *
+   * @param band     work to run
+   * @param progress of the operation that started the work
+   * @param index    of the band
+   * @param startRow first row of the band
+   * @param endRow   row after the last row of the band
+   * @throws CancellationException if the operation is cancelled
+   */
+  private static void runBand(Band band, Progress progress, int index, int startRow, int endRow)
+          throws CancellationException {
+    progress.check();
+    band.run(index, startRow, endRow);
+    progress.advance(endRow - startRow);
+  }
+
+  /**
+   * Return the pool that processes bands, creating it if necessary, and count the caller as one of
+   * its users until {@link #releasePool(ForkJoinPool)} is called.
+   *
+   * @return pool with one worker per thread
+   */
+  private static synchronized ForkJoinPool acquirePool() {
+    if (pool == null) {
+      pool = new ForkJoinPool(threads);
+    }
+    users.merge(pool, 1, Integer::sum);
+    return pool;
+  }
+
+  /**
+   * Stop counting the caller as a user of a pool.  A pool that has been replaced is shut down once
+   * its last user is done.
+   *
+   * @param used pool returned by {@link #acquirePool()}
+   */
+  private static synchronized void releasePool(ForkJoinPool used) {
+    if (users.merge(used, -1, Integer::sum) == 0) {
+      users.remove(used);
+      if (used != pool) {
+        used.shutdown();
+      }
+    }
+  }
+}
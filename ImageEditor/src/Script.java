@@ -0,0 +1,294 @@
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Scanner;
+
+import static java.lang.Integer.valueOf;
+
+/**
+ * This class represents a script that has been compiled into a list of steps (see
+ * {@link ScriptStep}).  Compiling reads and checks every line before anything runs, so a mistake
+ * anywhere in the script is reported, with its line number, before any image is touched.  A
+ * compiled script can then be run on any number of models without being read again.
+ *
+ * <p>Each command becomes its own step.  Models in lazy mode combine runs of greyscale and sepia
+ * commands into a single pass when they apply them (see {@link IModel#setLazy(boolean)}).
+ */
+public class Script {
+  /**
+   * Steps of this script, in order.
+   */
+  private final List<ScriptStep> steps;
+
+  /**
+   * Construct a script from its steps.
+   *
+   * @param steps of the script, in order
+   */
+  private Script(List<ScriptStep> steps) {
+    this.steps = Collections.unmodifiableList(steps);
+  }
+
+  /**
+   * Compile a script from the given text.
+   *
+   * @param text of the script
+   * @return compiled script
+   * @throws IllegalArgumentException if a command is unknown, or has missing or invalid arguments
+   */
+  public static Script compile(String text) throws IllegalArgumentException {
+    return compile(new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8)));
+  }
+
+  /**
+   * Compile a script from the given input stream.  Commands must each be on separate lines, while
+   * arguments on a single line must be separated by spaces.  Consult the README file for supported
+   * commands.  Compiling stops at a "quit" command.
+   *
+   * @param in input stream of the script
+   * @return compiled script
+   * @throws IllegalArgumentException if a command is unknown, or has missing or invalid arguments.
+   *                                  The message starts with the line number.
+   */
+  public static Script compile(InputStream in) throws IllegalArgumentException {
+    List<ScriptStep> steps = new ArrayList<>();
+    Scanner sc = new Scanner(in);
+    int line = 0;
+    while (sc.hasNextLine()) {
+      line++;
+      // Split a single line into an array of string tokens (spaces as delimiter)
+      String[] tokens = sc.nextLine().split("\\s+");
+
+      if (tokens[0].equals("quit")) {
+        steps.add(new ScriptStep("quit", line, IModel::reset));
+        break;
+      }
+      try {
+        steps.add(new ScriptStep(tokens[0], line, parse(tokens)));
+      } catch (IllegalArgumentException e) {
+        throw new IllegalArgumentException("Line " + line + ": " + e.getMessage(), e);
+      }
+    }
+    return new Script(steps);
+  }
+
+  /**
+   * Return the steps of this script, in order.
+   *
+   * @return unmodifiable list of steps
+   */
+  public List<ScriptStep> getSteps() {
+    return steps;
+  }
+
+  /**
+   * Return whether this script has a step from the given command.
+   *
+   * @param command name of the command, such as "save"
+   * @return true if the command is used
+   */
+  public boolean uses(String command) {
+    for (ScriptStep step : steps) {
+      if (step.getCommand().equals(command)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Run every step of this script on the given model, in order.  The model is left as the
+   * steps leave it.
+   *
+   * @param model to be worked on
+   * @throws IOException              if a file cannot be read or written
+   * @throws IllegalStateException    if an edit is run without a current image.  The message starts
+   *                                  with the line number.
+   * @throws IllegalArgumentException if an argument does not suit the current image.  The message
+   *                                  starts with the line number.
+   */
+  public void run(IModel model) throws IOException, IllegalStateException,
+          IllegalArgumentException {
+    for (ScriptStep step : steps) {
+      try {
+        step.run(model);
+      } catch (IllegalArgumentException e) {
+        throw new IllegalArgumentException("Line " + step.getLine() + ": " + e.getMessage(),
+                e);
+      } catch (IllegalStateException e) {
+        throw new IllegalStateException("Line " + step.getLine() + ": " + e.getMessage(), e);
+      }
+    }
+  }
+
+  /**
+   * Read one command and its arguments into the work it does on a model.
+   *
+   * @param tokens of the command line, starting with the command name
+   * @return work the command does
+   * @throws IllegalArgumentException if the command is unknown, or has missing or invalid
+   *                                  arguments
+   */
+  private static ScriptStep.Action parse(String[] tokens) throws IllegalArgumentException {
+    switch (tokens[0]) {
+      case "load": {
+        checkArgs(tokens, 1);
+        String filename = tokens[1];
+        return model -> model.loadImage(filename);
+      }
+      case "save": {
+        checkArgs(tokens, 1);
+        String filename = tokens[1];
+        return model -> {
+          try {
+            ImageUtil.writeImage(model.getImage(), filename);
+          } catch (UncheckedIOException e) {
+            // a lazily loaded image could not be read when its pixels were needed
+            throw e.getCause();
+          }
+        };
+      }
+
+      // The next group of commands require one or two integer parameters
+      case "checkers": {
+        checkArgs(tokens, 1);
+        int size = getDigit(tokens[1]);
+        Checkers.checkSize(size);
+        return model -> model.generateCheckers(size);
+      }
+      case "frenchFlag": {
+        checkArgs(tokens, 1);
+        int size = getDigit(tokens[1]);
+        FrenchFlag.checkSize(size);
+        return model -> model.generateFrenchFlag(size);
+      }
+      case "greekFlag": {
+        checkArgs(tokens, 1);
+        int size = getDigit(tokens[1]);
+        GreekFlag.checkSize(size);
+        return model -> model.generateGreekFlag(size);
+      }
+      case "swissFlag": {
+        checkArgs(tokens, 1);
+        int size = getDigit(tokens[1]);
+        SwissFlag.checkSize(size);
+        return model -> model.generateSwissFlag(size);
+      }
+      case "horizontalRainbow": {
+        checkArgs(tokens, 2);
+        int width = getDigit(tokens[1]);
+        int height = getDigit(tokens[2]);
+        HorizontalRainbow.checkSize(width, height);
+        return model -> model.generateHorizRainbow(width, height);
+      }
+      case "verticalRainbow": {
+        checkArgs(tokens, 2);
+        int width = getDigit(tokens[1]);
+        int height = getDigit(tokens[2]);
+        VerticalRainbow.checkSize(width, height);
+        return model -> model.generateVertRainbow(width, height);
+      }
+      case "mosaic": {
+        // Mosaic takes an optional random seed after the number of seeds.  The number of seeds
+        // can only be checked against the size of the image when it runs.
+        if (tokens.length == 3) {
+          int seed = getDigit(tokens[1]);
+          int randomSeed = getDigit(tokens[2]);
+          Mosaic.checkNumSeeds(seed);
+          return model -> model.mosaic(seed, randomSeed);
+        }
+        checkArgs(tokens, 1);
+        int seed = getDigit(tokens[1]);
+        Mosaic.checkNumSeeds(seed);
+        return model -> model.mosaic(seed);
+      }
+      case "threads": {
+        checkArgs(tokens, 1);
+        int threads = getDigit(tokens[1]);
+        RowBands.checkThreads(threads);
+        return model -> model.setThreads(threads);
+      }
+      // Scripts cannot undo, so they keep no undo history for these commands to set up
+      case "history":
+      case "checkpointHistory":
+      case "compressHistory":
+        throw new IllegalArgumentException("Scripts keep no undo history, so " + tokens[0]
+                + " has no effect.");
+
+      // Dither takes an optional mode, and the bayer mode takes a matrix size
+      case "dither": {
+        if (tokens.length == 1) {
+          return IModel::dither;
+        } else if (tokens[1].equals("bayer")) {
+          checkArgs(tokens, 2);
+          int size = getDigit(tokens[2]);
+          // build the matrix now so a bad size is reported before anything runs
+          new BayerDither(size);
+          return model -> model.ditherBayer(size);
+        } else if (tokens[1].equals("bluenoise")) {
+          checkArgs(tokens, 1);
+          return IModel::ditherBlueNoise;
+        }
+        throw new IllegalArgumentException("Unknown dither mode - use bayer or bluenoise.");
+      }
+
+      // Blur takes an optional radius argument
+      case "blur": {
+        if (tokens.length == 1) {
+          return IModel::blur;
+        }
+        checkArgs(tokens, 1);
+        int radius = getDigit(tokens[1]);
+        // build the blur now so a bad radius is reported before anything runs
+        new Blur(radius);
+        return model -> model.blur(radius);
+      }
+      case "sharpen":
+        return IModel::sharpen;
+      case "greyscale":
+        return IModel::greyscale;
+      case "sepia":
+        return IModel::sepia;
+
+      // If the command is not one of the above commands, throw exception
+      default:
+        throw new IllegalArgumentException("Could not process command.");
+    }
+  }
+
+  /**
+   * Verify that a command has the given number of arguments.
+   *
+   * @param tokens    String array of command tokens to be checked.
+   * @param arguments number of arguments the command needs
+   * @throws IllegalArgumentException if there are too many or too few arguments
+   */
+  private static void checkArgs(String[] tokens, int arguments) throws IllegalArgumentException {
+    if (tokens.length != arguments + 1) {
+      throw new IllegalArgumentException("Incorrect number of command arguments.");
+    }
+  }
+
+  /**
+   * Modify input for method commands that require an integer argument.  This method takes a string
+   * token and converts it to an int if the token represents an integer.
+   *
+   * @param token String token to be converted to an int.
+   * @return int representation of given token.
+   * @throws IllegalArgumentException if token does not represent an integer.
+   */
+  private static int getDigit(String token) throws IllegalArgumentException {
+    Integer digit;
+    try {
+      digit = valueOf(token);
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException("Invalid command argument - argument not an integer.");
+    }
+    return digit.intValue();
+  }
+}
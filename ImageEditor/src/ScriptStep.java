@@ -0,0 +1,75 @@
+import java.io.IOException;
+
+/**
+ * This class represents one step of a compiled script (see {@link Script}).  A step knows
+ * which script command it came from and on which line, and runs that command on a model.  The
+ * arguments of the command have already been read and checked, so running it does no parsing.
+ */
+public class ScriptStep {
+  /**
+   * This interface represents the work a step does on a model.
+   */
+  public interface Action {
+    /**
+     * Run the work on the given model.
+     *
+     * @param model to be worked on
+     * @throws IOException if a file cannot be read or written
+     */
+    void run(IModel model) throws IOException;
+  }
+
+  /**
+   * Script command this step came from, such as "blur".
+   */
+  private final String command;
+  /**
+   * Line of the script the command is on, starting from 1.
+   */
+  private final int line;
+  /**
+   * Work done on the model.
+   */
+  private final Action action;
+
+  /**
+   * Construct a step.
+   *
+   * @param command script command the step came from
+   * @param line    of the script the command is on, starting from 1
+   * @param action  work done on the model
+   */
+  public ScriptStep(String command, int line, Action action) {
+    this.command = command;
+    this.line = line;
+    this.action = action;
+  }
+
+  /**
+   * Return the script command this step came from.
+   *
+   * @return command name
+   */
+  public String getCommand() {
+    return command;
+  }
+
+  /**
+   * Return the line of the script that the command is on.
+   *
+   * @return line number, starting from 1
+   */
+  public int getLine() {
+    return line;
+  }
+
+  /**
+   * Run this step on the given model.
+   *
+   * @param model to be worked on
+   * @throws IOException if a file cannot be read or written
+   */
+  public void run(IModel model) throws IOException {
+    action.run(model);
+  }
+}
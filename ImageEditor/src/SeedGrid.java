@@ -0,0 +1,128 @@
+/**
+ * This class represents a spatial index over the seeds of a mosaic.  The image is divided into a
+ * uniform grid of square cells sized so that each cell holds about one seed.  Finding the seed
+ * closest to a pixel searches outward from the pixel's cell one ring of cells at a time, and stops
+ * as soon as no unsearched cell could hold a closer seed.  The cost of a query therefore depends on
+ * the local seed density rather than on the total number of seeds.
+ *
+ * <p>Distances are compared as squared integers.  When several seeds are equally close, the seed
+ * with the lowest index is chosen, which matches a linear scan over the seeds in order.
+ */
+public class SeedGrid {
+  /**
+   * Row of each seed.
+   */
+  private final int[] rows;
+  /**
+   * Column of each seed.
+   */
+  private final int[] columns;
+  /**
+   * Width and height of each cell in pixels.
+   */
+  private final int cellSize;
+  /**
+   * Number of rows of cells.
+   */
+  private final int gridRows;
+  /**
+   * Number of columns of cells.
+   */
+  private final int gridColumns;
+  /**
+   * Index into cellSeeds of the first seed of each cell, with one extra entry marking the end.
+   */
+  private final int[] cellStart;
+  /**
+   * Seed indices grouped by cell, in increasing order within each cell.
+   */
+  private final int[] cellSeeds;
+
+  /**
+   * Construct a grid over the given seeds for an image of the given size.
+   *
+   * @param height  of the image
+   * @param width   of the image
+   * @param rows    row of each seed
+   * @param columns column of each seed
+   */
+  public SeedGrid(int height, int width, int[] rows, int[] columns) {
+    this.rows = rows;
+    this.columns = columns;
+    this.cellSize = Math.max(1, (int) Math.sqrt((double) height * width / rows.length));
+    this.gridRows = (height + cellSize - 1) / cellSize;
+    this.gridColumns = (width + cellSize - 1) / cellSize;
+    // count the seeds in each cell, then turn the counts into start positions
+    this.cellStart = new int[gridRows * gridColumns + 1];
+    for (int i = 0; i < rows.length; i++) {
+      cellStart[cellOf(rows[i], columns[i]) + 1]++;
+    }
+    for (int cell = 0; cell < gridRows * gridColumns; cell++) {
+      cellStart[cell + 1] += cellStart[cell];
+    }
+    this.cellSeeds = new int[rows.length];
+    int[] next = cellStart.clone();
+    for (int i = 0; i < rows.length; i++) {
+      cellSeeds[next[cellOf(rows[i], columns[i])]++] = i;
+    }
+  }
+
+  /**
+   * Return the index of the seed closest to the given pixel.
+   *
+   * @param row    of the pixel
+   * @param column of the pixel
+   * @return index of the closest seed
+   */
+  public int nearest(int row, int column) {
+    int cellRow = row / cellSize;
+    int cellColumn = column / cellSize;
+    int maxRing = Math.max(Math.max(cellRow, gridRows - 1 - cellRow),
+            Math.max(cellColumn, gridColumns - 1 - cellColumn));
+    int best = -1;
+    long bestDistance = Long.MAX_VALUE;
+    for (int ring = 0; ring <= maxRing; ring++) {
+      if (best >= 0 && ring > 0) {
+        // every seed in this ring or beyond is at least this far away along one axis
+        long reach = (long) (ring - 1) * cellSize + 1;
+        if (bestDistance < reach * reach) {
+          break;
+        }
+      }
+      int top = Math.max(0, cellRow - ring);
+      int bottom = Math.min(gridRows - 1, cellRow + ring);
+      for (int r = top; r <= bottom; r++) {
+        boolean edgeRow = r == cellRow - ring || r == cellRow + ring;
+        int step = edgeRow || ring == 0 ? 1 : 2 * ring;
+        for (int c = cellColumn - ring; c <= cellColumn + ring; c += step) {
+          if (c < 0 || c >= gridColumns) {
+            continue;
+          }
+          int cell = r * gridColumns + c;
+          for (int k = cellStart[cell]; k < cellStart[cell + 1]; k++) {
+            int seed = cellSeeds[k];
+            long dr = row - rows[seed];
+            long dc = column - columns[seed];
+            long distance = dr * dr + dc * dc;
+            if (distance < bestDistance || (distance == bestDistance && seed < best)) {
+              best = seed;
+              bestDistance = distance;
+            }
+          }
+        }
+      }
+    }
+    return best;
+  }
+
+  /**
+   * Return the cell that holds the given pixel.
+   *
+   * @param row    of the pixel
+   * @param column of the pixel
+   * @return index of the cell
+   */
+  private int cellOf(int row, int column) {
+    return (row / cellSize) * gridColumns + column / cellSize;
+  }
+}
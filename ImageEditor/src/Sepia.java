@@ -7,10 +7,17 @@ public class Sepia extends TransformColor {
   /**
    * Matrix used to transform pixel channels to sepia values in an image.
    */
-  private final double[][] matrix =
+  private static final double[][] MATRIX =
   {{.393, .769, .189}, {.349, .686, .168},
    {.272, .534, .131}};
 
+  /**
+   * Construct a sepia color transformation editor.
+   */
+  public Sepia() {
+    super(MATRIX);
+  }
+
   /**
    * Perform a sepia color transformation on the provided image.  Returns a new image with sepia
    * pixel channel values.
@@ -19,6 +26,6 @@ public class Sepia extends TransformColor {
    * @return new image in greyscale.
    */
   public Image edit(Image image) {
-    return super.transform(image, matrix);
+    return super.transform(image);
   }
 }
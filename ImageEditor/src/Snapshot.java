@@ -0,0 +1,188 @@
+import java.io.ByteArrayOutputStream;
+import java.nio.IntBuffer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * This class represents an image kept in the undo and redo history, possibly in compressed form.
+ * Images in the history are rarely looked at again, and consecutive pixels are often the same or
+ * close (flags and checkerboards are flat areas, and mosaics are flat clusters), so they compress
+ * well.
+ *
+ * <p>A compressed snapshot splits the image into bands of rows and compresses each band on its own
+ * with deflate, so bands are compressed and restored in parallel (see {@link RowBands}).  Within a
+ * row each channel is stored as the difference from the pixel to its left, as PNG does, which turns
+ * smooth gradients into runs of small repeated values.  The image is only rebuilt when
+ * {@link #restore()} is called.
+ */
+public class Snapshot {
+  /**
+   * Number of rows in each compressed band.
+   */
+  private static final int BAND_ROWS = 64;
+
+  /**
+   * Image kept as it is, or null if this snapshot is compressed.
+   */
+  private final Image image;
+  /**
+   * Width of the image.
+   */
+  private final int width;
+  /**
+   * Height of the image.
+   */
+  private final int height;
+  /**
+   * Compressed bytes of each band of rows, or null if this snapshot is not compressed.
+   */
+  private final byte[][] bands;
+  /**
+   * Number of bytes held by this snapshot.
+   */
+  private final long bytes;
+
+  /**
+   * Construct a snapshot of the given image.
+   *
+   * @param image to be kept
+   * @param level deflate compression level from 1 (fastest) to 9 (smallest), or 0 to keep the
+   *              image uncompressed
+   * @throws IllegalArgumentException if level is not from 0 to 9
+   */
+  public Snapshot(Image image, int level) throws IllegalArgumentException {
+    if (level < 0 || level > 9) {
+      throw new IllegalArgumentException("Compression level must be from 0 to 9.");
+    }
+    this.width = image.getWidth();
+    this.height = image.getHeight();
+    if (level == 0) {
+      this.image = image;
+      this.bands = null;
+      this.bytes = (long) width * height * Integer.BYTES;
+      return;
+    }
+    this.image = null;
+    int count = (height + BAND_ROWS - 1) / BAND_ROWS;
+    this.bands = new byte[count][];
+    IntBuffer input = image.getPixelView();
+    RowBands.forEach(height, count, (index, startRow, endRow) ->
+            bands[index] = compress(input, width, startRow, endRow, level));
+    long total = 0;
+    for (byte[] band : bands) {
+      total += band.length;
+    }
+    this.bytes = total;
+  }
+
+  /**
+   * Return the image kept by this snapshot, decompressing it if necessary.
+   *
+   * @return the image
+   * @throws IllegalStateException if the compressed data is damaged
+   */
+  public Image restore() throws IllegalStateException {
+    if (image != null) {
+      return image;
+    }
+    int[] pixels = new int[width * height];
+    Progress.current().expect(height);
+    RowBands.forEach(height, bands.length, (index, startRow, endRow) ->
+            decompress(bands[index], pixels, width, startRow, endRow));
+    return new Image(width, height, pixels);
+  }
+
+  /**
+   * Return the number of bytes of pixel data held by this snapshot.
+   *
+   * @return number of bytes held
+   */
+  public long getBytes() {
+    return bytes;
+  }
+
+  /**
+   * Compress the rows from startRow (inclusive) to endRow (exclusive) of an image.
+   *
+   * @param input    read-only view of the pixels of the image
+   * @param width    of the image
+   * @param startRow first row to compress
+   * @param endRow   row after the last row to compress
+   * @param level    deflate compression level
+   * @return compressed bytes of the rows
+   */
+  private static byte[] compress(IntBuffer input, int width, int startRow, int endRow,
+                                 int level) {
+    byte[] raw = new byte[(endRow - startRow) * width * 3];
+    int k = 0;
+    for (int r = startRow; r < endRow; r++) {
+      int previous = 0;
+      for (int c = 0; c < width; c++) {
+        int pixel = input.get(r * width + c);
+        raw[k++] = (byte) (Image.red(pixel) - Image.red(previous));
+        raw[k++] = (byte) (Image.green(pixel) - Image.green(previous));
+        raw[k++] = (byte) (Image.blue(pixel) - Image.blue(previous));
+        previous = pixel;
+      }
+    }
+    Deflater deflater = new Deflater(level);
+    try {
+      deflater.setInput(raw);
+      deflater.finish();
+      ByteArrayOutputStream output = new ByteArrayOutputStream(raw.length / 4 + 64);
+      byte[] buffer = new byte[8192];
+      while (!deflater.finished()) {
+        output.write(buffer, 0, deflater.deflate(buffer));
+      }
+      return output.toByteArray();
+    } finally {
+      deflater.end();
+    }
+  }
+
+  /**
+   * Decompress the rows from startRow (inclusive) to endRow (exclusive) of an image.
+   *
+   * @param band     compressed bytes of the rows
+   * @param pixels   packed pixels of the image being restored
+   * @param width    of the image
+   * @param startRow first row to decompress
+   * @param endRow   row after the last row to decompress
+   * @throws IllegalStateException if the compressed data is damaged
+   */
+  private static void decompress(byte[] band, int[] pixels, int width, int startRow,
+                                 int endRow) throws IllegalStateException {
+    byte[] raw = new byte[(endRow - startRow) * width * 3];
+    Inflater inflater = new Inflater();
+    try {
+      inflater.setInput(band);
+      int filled = 0;
+      while (filled < raw.length && !inflater.finished()) {
+        filled += inflater.inflate(raw, filled, raw.length - filled);
+        if (inflater.needsInput()) {
+          break;
+        }
+      }
+      if (filled != raw.length) {
+        throw new IllegalStateException("Undo history is damaged.");
+      }
+    } catch (DataFormatException e) {
+      throw new IllegalStateException("Undo history is damaged.", e);
+    } finally {
+      inflater.end();
+    }
+    int k = 0;
+    for (int r = startRow; r < endRow; r++) {
+      int red = 0;
+      int green = 0;
+      int blue = 0;
+      for (int c = 0; c < width; c++) {
+        red = (red + raw[k++]) & 0xFF;
+        green = (green + raw[k++]) & 0xFF;
+        blue = (blue + raw[k++]) & 0xFF;
+        pixels[r * width + c] = Image.pack(red, green, blue);
+      }
+    }
+  }
+}
@@ -29,9 +29,7 @@ public class SwissFlag implements Generator {
    * @throws IllegalArgumentException if size entered is less than 32 pixels.
    */
   public Image generate(int size) {
-    if (size < 32) {
-      throw new IllegalArgumentException("Size must be greater than minimum pixel width.");
-    }
+    checkSize(size);
     // Scale flag dimensions to user input
     int scaleFactor = (int) Math.ceil(size / proportionWidth);
     int width = proportionWidth * scaleFactor;
@@ -50,4 +48,17 @@ public class SwissFlag implements Generator {
     // Return new image of pixels
     return new Image(pixels);
   }
-}
\ No newline at end of file
+
+  /**
+   * Checks that a flag of the given pixel width can be generated, so that a size can be checked
+   * before the flag is generated.
+   *
+   * @param size Desired pixel width of generated image.
+   * @throws IllegalArgumentException if size entered is less than 32 pixels.
+   */
+  public static void checkSize(int size) throws IllegalArgumentException {
+    if (size < 32) {
+      throw new IllegalArgumentException("Size must be greater than minimum pixel width.");
+    }
+  }
+}
@@ -0,0 +1,71 @@
+import java.nio.IntBuffer;
+
+/**
+ * This class represents an ordered dither operation.  Like {@link Dither}, it turns an image into
+ * a black and white image made of dots, but instead of spreading the error of each pixel to its
+ * neighbours it compares each grey value against a threshold taken from a square map that is tiled
+ * across the image.  No pixel depends on any other pixel, so every row can be processed at the same
+ * time (see {@link RowBands}).  The pattern of the dots depends on the order of the thresholds in
+ * the map, which subclasses provide.
+ */
+public abstract class ThresholdDither implements ImageEditor {
+  /**
+   * Width and height of the threshold map.
+   */
+  private final int size;
+  /**
+   * Grey value of each position of the map that a pixel must exceed to become white, in row-major
+   * order.
+   */
+  private final int[] thresholds;
+
+  /**
+   * Construct an ordered dither from a square map of ranks.  Each rank from 0 up to the number of
+   * positions in the map appears exactly once, and a pixel at a position of rank t becomes white if
+   * its grey value is more than (t + 0.5) / (size * size) of the way from black to white.
+   *
+   * @param size  width and height of the map
+   * @param ranks rank of each position of the map, in row-major order
+   * @throws IllegalArgumentException if the number of ranks does not match the size of the map
+   */
+  protected ThresholdDither(int size, int[] ranks) throws IllegalArgumentException {
+    if (size < 1 || ranks.length != size * size) {
+      throw new IllegalArgumentException("Threshold map does not match its size.");
+    }
+    this.size = size;
+    this.thresholds = new int[ranks.length];
+    for (int i = 0; i < ranks.length; i++) {
+      thresholds[i] = (int) ((2L * ranks[i] + 1) * 255 / (2L * ranks.length));
+    }
+  }
+
+  /**
+   * Create a dot-matrixed greyscale image by converting each pixel to greyscale and comparing it
+   * against the threshold map.
+   *
+   * @param image to be edited.
+   * @return an image object of a greyscale, dithered object
+   */
+  public Image edit(Image image) {
+    int width = image.getWidth();
+    int height = image.getHeight();
+    IntBuffer input = image.getPixelView();
+    // greyscale transformation, of which only the red channel is used
+    ColorTable grey = new ColorTable(new GreyScale().getMatrix());
+    int white = Image.pack(255, 255, 255);
+    int[] pixels = new int[width * height];
+    Progress.current().expect(height);
+    RowBands.forEach(height, (index, startRow, endRow) -> {
+      for (int r = startRow; r < endRow; r++) {
+        int mapRow = (r % size) * size;
+        for (int c = 0; c < width; c++) {
+          int i = r * width + c;
+          if (grey.apply(input.get(i), 0) > thresholds[mapRow + c % size]) {
+            pixels[i] = white;
+          }
+        }
+      }
+    });
+    return new Image(width, height, pixels);
+  }
+}
@@ -1,11 +1,49 @@
+import java.nio.IntBuffer;
+
 /**
  * This class represents a color transformation on an image. Color transformation operations use
  * matrix multiplication on the channels of each pixel to change the channel values.  This results
  * in an image with a different appearance. Examples of color transformations are making a greyscale
  * or sepia image from a full color image.  This class is abstract and implements the ImageEditor
- * interface.
+ * interface.  Each transformation is applied through a {@link ColorTable}, so the per-pixel work
+ * uses integer table lookups rather than floating-point arithmetic.
  */
 public abstract class TransformColor implements ImageEditor {
+  /**
+   * Matrix used by this color transformation, never changed.
+   */
+  private final double[][] matrix;
+
+  /**
+   * Construct a color transformation that uses the given matrix.  Row k of the matrix holds the
+   * coefficients of the red, green, and blue channels for new channel k.
+   *
+   * @param matrix 3x3 matrix of the transformation, which is copied.
+   */
+  protected TransformColor(double[][] matrix) {
+    this.matrix = copy(matrix);
+  }
+
+  /**
+   * Return a copy of the matrix used by this color transformation, so that changing the copy does
+   * not change the transformation.  Row k of the matrix holds the coefficients of the red, green,
+   * and blue channels for new channel k.
+   *
+   * @return matrix of this color transformation.
+   */
+  public double[][] getMatrix() {
+    return copy(matrix);
+  }
+
+  /**
+   * Transform an image with the matrix of this color transformation.  Returns a new image.
+   *
+   * @param image to be transformed.
+   * @return new transformed image.
+   */
+  protected Image transform(Image image) {
+    return transform(image, matrix);
+  }
 
   /**
    * Transform an image with a color transformation.  A color transformation changes the color of a
@@ -19,26 +57,51 @@ public abstract class TransformColor implements ImageEditor {
    * @return new transformed image.
    */
   public Image transform(Image image, double[][] matrix) {
-    // Create pixel array for new transformed image
-    int[][][] pixels = new int[image.getHeight()][image.getWidth()][3];
-    // Get pixel array from input image
-    int[][][] inputRgb = image.getRgb();
-    // Iterate through each pixel in the original image and perform matrix multiplication
-    // on the channel values for each pixel
-    for (int i = 0; i < image.getHeight(); i++) {
-      for (int j = 0; j < image.getWidth(); j++) {
-        for (int k = 0; k < 3; k++) {
-          int result = (int) Math.round((inputRgb[i][j][0] * matrix[k][0])
-                  + (inputRgb[i][j][1] * matrix[k][1])
-                  + (inputRgb[i][j][2] * matrix[k][2]));
-          // Clamp result between 0-255 (8-bit RGB range)
-          result = ImageUtil.clamp(result);
-          // Put result in new pixel array
-          pixels[i][j][k] = result;
-        }
-      }
-    }
+    int width = image.getWidth();
+    int height = image.getHeight();
+    // Create packed pixel array for new transformed image
+    int[] pixels = new int[width * height];
+    // Read-only view of the pixels of the input image
+    IntBuffer input = image.getPixelView();
+    // Precompute the transformation for every input channel value
+    ColorTable table = new ColorTable(matrix);
+    // Transform bands of rows in parallel
+    Progress.current().expect(height);
+    RowBands.forEach(height, (index, startRow, endRow) ->
+            transformRows(input, width, table, pixels, startRow, endRow));
     // Return new image from new pixel array
-    return new Image(pixels);
+    return new Image(width, height, pixels);
+  }
+
+  /**
+   * Transform the rows from startRow (inclusive) to endRow (exclusive) of an image and write the
+   * packed results into the output array.
+   *
+   * @param input    read-only view of the packed pixels of the original image.
+   * @param width    of the original image.
+   * @param table    of the linear color transformation.
+   * @param output   packed pixels of the transformed image.
+   * @param startRow first row to transform.
+   * @param endRow   row after the last row to transform.
+   */
+  private void transformRows(IntBuffer input, int width, ColorTable table, int[] output,
+                             int startRow, int endRow) {
+    for (int i = startRow * width; i < endRow * width; i++) {
+      output[i] = table.apply(input.get(i));
+    }
+  }
+
+  /**
+   * Return a copy of a 3x3 matrix.
+   *
+   * @param matrix to be copied.
+   * @return new matrix with the same values.
+   */
+  private static double[][] copy(double[][] matrix) {
+    double[][] copy = new double[3][];
+    for (int k = 0; k < 3; k++) {
+      copy[k] = matrix[k].clone();
+    }
+    return copy;
   }
 }
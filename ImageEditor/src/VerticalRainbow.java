@@ -16,9 +16,22 @@ public class VerticalRainbow {
    *                                  one pixel wide)
    */
   public Image generate(int width, int height) throws IllegalArgumentException {
+    checkSize(width, height);
+    return ImageUtil.generateRainbow(width, height, 0);
+  }
+
+  /**
+   * Checks that a rainbow of the given size can be generated, so that a size can be checked before
+   * the rainbow is generated.
+   *
+   * @param width  the width of the image (in pixels) to be generated
+   * @param height the height of the image (in pixels) to be generated
+   * @throws IllegalArgumentException if the width is less than 16, or if the height is less than
+   *                                  one
+   */
+  public static void checkSize(int width, int height) throws IllegalArgumentException {
     if (width < 16 || height < 1) {
       throw new IllegalArgumentException("Size must be greater than 15");
     }
-    return ImageUtil.generateRainbow(width, height, 0);
   }
 }
@@ -9,13 +9,15 @@ import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
 import java.util.HashMap;
+import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
 
 import javax.swing.JFrame;
 import javax.swing.JPanel;
 import javax.swing.JLabel;
 import javax.swing.JTextArea;
-import javax.swing.ImageIcon;
 import javax.swing.BorderFactory;
 import javax.swing.BoxLayout;
 import javax.swing.JScrollPane;
@@ -25,6 +27,9 @@ import javax.swing.JMenuItem;
 import javax.swing.JButton;
 import javax.swing.JOptionPane;
 import javax.swing.JFileChooser;
+import javax.swing.JProgressBar;
+import javax.swing.SwingUtilities;
+import javax.swing.SwingWorker;
 import javax.swing.filechooser.FileNameExtensionFilter;
 
 import static java.lang.Integer.valueOf;
@@ -35,6 +40,10 @@ import static java.lang.Integer.valueOf;
  * can see the current loaded or generated image, can use menu lists to choose action items, can
  * click buttons to choose action items, and can type and run a batch script with image processing
  * commands.
+ *
+ * <p>Operations run on a background thread, so the view stays responsive while large images are
+ * processed.  A progress bar shows how far the running operation has got, and a cancel button stops
+ * it, leaving the image as it was.  Only one operation runs at a time.
  */
 public class View extends JFrame implements IView {
   /**
@@ -51,9 +60,9 @@ public class View extends JFrame implements IView {
    */
   private JPanel batchPanel;
   /**
-   * Displays title for the image to be displayed.
+   * Displays the current image at the chosen zoom.
    */
-  private JLabel imageLabel;
+  private ImagePanel imageView;
   /**
    * Display window for user to choose a file to open.
    */
@@ -67,9 +76,34 @@ public class View extends JFrame implements IView {
    */
   private JTextArea sTextArea;
   /**
-   * Displays current image.
+   * Shows how much of the running operation is done.
    */
-  private ImageIcon image = new ImageIcon();
+  private JProgressBar progressBar;
+  /**
+   * Button that cancels the running operation.
+   */
+  private JButton cancelButton;
+  /**
+   * Shows how much undo and redo history is kept.
+   */
+  private JLabel historyLabel;
+  /**
+   * Operation running in the background, or null if none is.
+   */
+  private Operation running;
+  /**
+   * Operation the user started while a commit was running, which runs once the commit has been
+   * cancelled, or null if there is none.
+   */
+  private Operation queued;
+  /**
+   * Whether the controller should commit the previewed edits once the running operation is done.
+   */
+  private volatile boolean commitScheduled;
+  /**
+   * Controller that commits and discards the previewed edits.
+   */
+  private IController controller;
 
   /**
    * Construct a view with a given controller.  The view will display the given caption as its
@@ -86,6 +120,7 @@ public class View extends JFrame implements IView {
 
   @Override
   public void setListener(IController controller) {
+    this.controller = controller;
     listener = new SelectionListener(controller);
     listener.setUp();
   }
@@ -112,6 +147,7 @@ public class View extends JFrame implements IView {
     createUndoButton();
     createRedoButton();
     createFileButtons();
+    createProgressPanel();
     createBatchPanel();
 
     // add left and right panels to main panel
@@ -124,25 +160,48 @@ public class View extends JFrame implements IView {
 
   @Override
   public void updateImage(BufferedImage newImage) throws IllegalStateException {
-    try {
-      // ImageIcon uses a caching strategy so you need to flush each time this is called
-      ImageIcon tempImage = new ImageIcon(newImage);
-      tempImage.getImage().flush();
-      image.setImage(tempImage.getImage());
-      imageLabel.setIcon(image);
-      // update UI
-      imageLabel.repaint();
-      // put scrollbar back in if necessary
-      imageLabel.revalidate();
-    } catch (IllegalStateException e) {
-      showMessage(e.getMessage(), true);
+    updateImage(new Pyramid(ImageUtil.toImage(newImage)));
+  }
+
+  @Override
+  public void updateImage(Pyramid pyramid) {
+    if (!SwingUtilities.isEventDispatchThread()) {
+      // operations call this from the background, but Swing may only be used on its own thread
+      SwingUtilities.invokeLater(() -> updateImage(pyramid));
+      return;
     }
+    imageView.setPyramid(pyramid);
+  }
+
+  @Override
+  public void updatePreview(BufferedImage preview) {
+    if (!SwingUtilities.isEventDispatchThread()) {
+      SwingUtilities.invokeLater(() -> updatePreview(preview));
+      return;
+    }
+    imageView.setPreview(preview);
+  }
+
+  @Override
+  public void scheduleCommit() {
+    commitScheduled = true;
+  }
+
+  @Override
+  public void updateHistory(int undoSteps, int redoSteps, long bytes) {
+    if (!SwingUtilities.isEventDispatchThread()) {
+      SwingUtilities.invokeLater(() -> updateHistory(undoSteps, redoSteps, bytes));
+      return;
+    }
+    historyLabel.setText(String.format(Locale.ROOT, "History: %d undo, %d redo, %.1f MB",
+            undoSteps, redoSteps, bytes / (double) (1 << 20)));
   }
 
   /**
    * Create a Jpanel object that will hold an image. This panel is added to the left JPanel of the
    * main panel. The image is initialized to be a grey box when first created. If an image is too
-   * big for the dimensions of the panel then a scrollbar is displayed.
+   * big for the dimensions of the panel then a scrollbar is displayed. Buttons under the image
+   * zoom in and out (see {@link ImagePanel}).
    */
   private void createImagePanel() {
     // image panel
@@ -150,21 +209,35 @@ public class View extends JFrame implements IView {
     imagePanel.setBorder(BorderFactory.createTitledBorder("Your image"));
     imagePanel.setLayout(new GridLayout(1, 0, 30, 30));
     leftPanel.add(imagePanel);
-    imageLabel = new JLabel();
-    JScrollPane imageScrollPane = new JScrollPane(imageLabel);
+    imageView = new ImagePanel();
+    JScrollPane imageScrollPane = new JScrollPane(imageView);
+    imageScrollPane.getHorizontalScrollBar().setUnitIncrement(16);
+    imageScrollPane.getVerticalScrollBar().setUnitIncrement(16);
 
-    imageLabel.setIcon(image);
     imageScrollPane.setPreferredSize(new Dimension(100, 300));
     imagePanel.add(imageScrollPane);
     leftPanel.add(imagePanel);
+
+    // zoom buttons
+    JPanel zoomPanel = new JPanel();
+    zoomPanel.setLayout(new FlowLayout());
+    leftPanel.add(zoomPanel);
+    for (String command : new String[]{"Zoom in", "Zoom out", "Actual size"}) {
+      JButton zoomButton = new JButton(command);
+      zoomButton.setActionCommand(command);
+      zoomButton.addActionListener(listener);
+      zoomPanel.add(zoomButton);
+    }
   }
 
   /**
    * Create all the different menu bars. There is a file menu with items for opening and saving
    * files. There is an edit menu with undo and redo items. There is a filter menu that has options
-   * for blur, dither, greyscale, mosaic, sepia, and sharpen. Lastly there is generate menu with
-   * options checkerboard, horizontal rainbow, and vertical rainbow. Action listeners for each menu
-   * item are also added to the created menu in this function.
+   * for blur, dither (error diffusion, Bayer, and blue noise), greyscale, mosaic, sepia, and
+   * sharpen. Lastly there is generate menu with
+   * options checkerboard, horizontal rainbow, and vertical rainbow, and a view menu that zooms the
+   * image in and out. Action listeners for each menu item are also added to the created menu in
+   * this function.
    */
   private void createMenu() {
     // Create menu bar
@@ -193,6 +266,10 @@ public class View extends JFrame implements IView {
     blur.addActionListener(listener);
     JMenuItem dither = new JMenuItem("Dither");
     dither.addActionListener(listener);
+    JMenuItem bayerDither = new JMenuItem("Bayer dither");
+    bayerDither.addActionListener(listener);
+    JMenuItem blueNoiseDither = new JMenuItem("Blue noise dither");
+    blueNoiseDither.addActionListener(listener);
     JMenuItem greyscale = new JMenuItem("Greyscale");
     greyscale.addActionListener(listener);
     JMenuItem mosaic = new JMenuItem("Mosaic");
@@ -203,6 +280,8 @@ public class View extends JFrame implements IView {
     sharpen.addActionListener(listener);
     filterMenu.add(blur);
     filterMenu.add(dither);
+    filterMenu.add(bayerDither);
+    filterMenu.add(blueNoiseDither);
     filterMenu.add(greyscale);
     filterMenu.add(mosaic);
     filterMenu.add(sepia);
@@ -222,6 +301,15 @@ public class View extends JFrame implements IView {
     generateMenu.add(vertRainbow);
     menuBar.add(generateMenu);
 
+    // Create view menu
+    JMenu viewMenu = new JMenu("View");
+    for (String command : new String[]{"Zoom in", "Zoom out", "Actual size"}) {
+      JMenuItem zoomItem = new JMenuItem(command);
+      zoomItem.addActionListener(listener);
+      viewMenu.add(zoomItem);
+    }
+    menuBar.add(viewMenu);
+
     // Create batch menu
     JMenu batchMenu = new JMenu("Batch");
     JMenuItem batch = new JMenuItem("Run batch");
@@ -293,6 +381,28 @@ public class View extends JFrame implements IView {
     filesavePanel.add(fileSaveDisplay);
   }
 
+  /**
+   * Create a progress bar for the running operation and a button that cancels it. These are placed
+   * in the left panel of the main panel under the file buttons. The cancel button is only enabled
+   * while an operation is running.
+   */
+  private void createProgressPanel() {
+    JPanel progressPanel = new JPanel();
+    progressPanel.setLayout(new FlowLayout());
+    leftPanel.add(progressPanel);
+    progressBar = new JProgressBar(0, 100);
+    progressBar.setStringPainted(true);
+    progressPanel.add(progressBar);
+    cancelButton = new JButton("Cancel");
+    cancelButton.setActionCommand("Cancel");
+    cancelButton.addActionListener(listener);
+    cancelButton.setEnabled(false);
+    progressPanel.add(cancelButton);
+    historyLabel = new JLabel();
+    progressPanel.add(historyLabel);
+    updateHistory(0, 0, 0);
+  }
+
   /**
    * This method creates a batch script text box for the user and adds a run batch script button.
    * These components are placed in the right panel of the main panel. The text box for the batch
@@ -355,7 +465,182 @@ public class View extends JFrame implements IView {
     }
   }
 
+  /**
+   * Run an operation on a background thread, showing its progress until it finishes.  If a commit
+   * of previewed edits is running, it is cancelled and run again after this operation; if another
+   * operation is still running, the user is told so and nothing is run.  When the operation fails,
+   * the user is shown why.
+   *
+   * @param task         operation to run
+   * @param stateMessage message shown if the operation throws IllegalStateException, or null to
+   *                     show the message of the exception
+   * @param onSuccess    run on the event dispatch thread if the operation succeeds, or null
+   */
+  private void runInBackground(Task task, String stateMessage, Runnable onSuccess) {
+    Operation operation = new Operation(task, stateMessage, onSuccess, false);
+    if (running != null && running.commit && queued == null) {
+      // the user need not wait for the full image, the edits stay pending until after this
+      queued = operation;
+      running.progress.cancel();
+      return;
+    }
+    if (running != null) {
+      showMessage("Another operation is still running.", true);
+      return;
+    }
+    start(operation);
+  }
+
+  /**
+   * Start an operation on a background thread, showing its progress in the progress bar.
+   *
+   * @param operation to start, which must not be running already
+   */
+  private void start(Operation operation) {
+    running = operation;
+    progressBar.setValue(0);
+    cancelButton.setEnabled(true);
+    operation.execute();
+  }
+
+  /**
+   * Start what should follow the operation that just finished: an operation the user started
+   * meanwhile, dropping the previewed edits if the user cancelled their commit, or else a commit
+   * that was scheduled.
+   *
+   * @param finished  operation that just finished
+   * @param cancelled whether it was cancelled
+   */
+  private void startNext(Operation finished, boolean cancelled) {
+    if (queued != null) {
+      Operation next = queued;
+      queued = null;
+      if (finished.commit) {
+        // any edits the cancelled commit left pending are committed after the next operation
+        commitScheduled = true;
+      }
+      start(next);
+    } else if (finished.commit && cancelled) {
+      start(new Operation(controller::discard, null, null, false));
+    } else if (commitScheduled) {
+      commitScheduled = false;
+      start(new Operation(controller::commit, null, null, true));
+    }
+  }
+
+  /**
+   * Run an operation on a background thread, showing its progress until it finishes.
+   *
+   * @param task         operation to run
+   * @param stateMessage message shown if the operation throws IllegalStateException, or null to
+   *                     show the message of the exception
+   */
+  private void runInBackground(Task task, String stateMessage) {
+    runInBackground(task, stateMessage, null);
+  }
+
+  /**
+   * This interface represents an operation that the user asked for, such as a call to the
+   * controller.
+   */
+  private interface Task {
+    /**
+     * Run the operation.
+     *
+     * @throws Exception if the operation fails
+     */
+    void run() throws Exception;
+  }
+
+  /**
+   * Private class representing an operation running on a background thread.  The editors report
+   * their progress to it (see {@link Progress}), which is shown in the progress bar.  Once it has
+   * finished, the cancel button is disabled and any failure is shown to the user.
+   */
+  private class Operation extends SwingWorker<Void, Void> {
+    /**
+     * Operation to run.
+     */
+    private final Task task;
+    /**
+     * Message shown if the operation throws IllegalStateException, or null.
+     */
+    private final String stateMessage;
+    /**
+     * Run if the operation succeeds, or null.
+     */
+    private final Runnable onSuccess;
+    /**
+     * Whether the operation commits previewed edits, and so gives way to any the user starts.
+     */
+    private final boolean commit;
+    /**
+     * Progress of the operation, which can be cancelled.
+     */
+    private final Progress progress = new Progress(this::setProgress);
+
+    /**
+     * Construct an operation that has not started yet.
+     *
+     * @param task         operation to run
+     * @param stateMessage message shown if the operation throws IllegalStateException, or null
+     * @param onSuccess    run if the operation succeeds, or null
+     * @param commit       whether the operation commits previewed edits
+     */
+    private Operation(Task task, String stateMessage, Runnable onSuccess, boolean commit) {
+      this.task = task;
+      this.stateMessage = stateMessage;
+      this.onSuccess = onSuccess;
+      this.commit = commit;
+      addPropertyChangeListener(e -> {
+        if ("progress".equals(e.getPropertyName())) {
+          progressBar.setValue((Integer) e.getNewValue());
+        }
+      });
+    }
 
+    @Override
+    protected Void doInBackground() throws Exception {
+      Progress.begin(progress);
+      try {
+        task.run();
+      } finally {
+        Progress.end();
+      }
+      return null;
+    }
+
+    @Override
+    protected void done() {
+      running = null;
+      cancelButton.setEnabled(false);
+      progressBar.setValue(0);
+      boolean cancelled = false;
+      try {
+        get();
+        if (onSuccess != null) {
+          onSuccess.run();
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      } catch (ExecutionException e) {
+        Throwable cause = e.getCause();
+        if (cause instanceof CancellationException) {
+          cancelled = true;
+          if (!commit || queued == null) {
+            showMessage("Operation cancelled.", false);
+          }
+        } else if (cause instanceof IOException) {
+          showMessage("That's not a valid filepath", true);
+        } else if (cause instanceof IllegalStateException && stateMessage != null) {
+          showMessage(stateMessage, true);
+        } else {
+          showMessage(cause.getMessage(), true);
+        }
+      }
+      startNext(this, cancelled);
+    }
+  }
 
   /**
    * Private class representing listeners for all of the menu items and buttons a user can select in
@@ -389,6 +674,10 @@ public class View extends JFrame implements IView {
      */
     public void setUp() {
       actionMap = new HashMap<>();
+      actionMap.put("Cancel", new Cancel());
+      actionMap.put("Zoom in", () -> imageView.zoomIn());
+      actionMap.put("Zoom out", () -> imageView.zoomOut());
+      actionMap.put("Actual size", () -> imageView.actualSize());
       actionMap.put("Open file", new Open());
       actionMap.put("Save file", new Save());
       actionMap.put("Run batch", new Batch());
@@ -396,6 +685,8 @@ public class View extends JFrame implements IView {
       actionMap.put("Redo", new Redo());
       actionMap.put("Blur", new BlurOp());
       actionMap.put("Dither", new DitherOp());
+      actionMap.put("Bayer dither", new BayerDitherOp());
+      actionMap.put("Blue noise dither", new BlueNoiseDitherOp());
       actionMap.put("Greyscale", new GreyOp());
       actionMap.put("Mosaic", new MosaicOp());
       actionMap.put("Sepia", new SepiaOp());
@@ -418,6 +709,18 @@ public class View extends JFrame implements IView {
       }
     }
 
+    /**
+     * Class that represents the action performed when user chooses to cancel the running operation.
+     */
+    private class Cancel implements Runnable {
+      @Override
+      public void run() {
+        if (running != null) {
+          running.progress.cancel();
+        }
+      }
+    }
+
     /**
      * Class that represents the action performed when user chooses to open a file.
      */
@@ -431,12 +734,7 @@ public class View extends JFrame implements IView {
         if (retvalue == JFileChooser.APPROVE_OPTION) {
           File f = fchooser.getSelectedFile();
           fileOpenDisplay.setText(f.getAbsolutePath());
-          showMessage("Processing...", false);
-          try {
-            controller.loadFile(f.getAbsolutePath());
-          } catch (IOException error) {
-            showMessage("That's not a valid filepath", true);
-          }
+          runInBackground(() -> controller.loadFile(f.getAbsolutePath()), null);
         }
       }
     }
@@ -451,11 +749,7 @@ public class View extends JFrame implements IView {
         if (retvalue == JFileChooser.APPROVE_OPTION) {
           File f = fchooser.getSelectedFile();
           fileSaveDisplay.setText(f.getAbsolutePath());
-          try {
-            controller.saveFile(f.getAbsolutePath());
-          } catch (IOException error) {
-            showMessage("That's not a valid filepath", true);
-          }
+          runInBackground(() -> controller.saveFile(f.getAbsolutePath()), null);
         }
       }
     }
@@ -466,13 +760,9 @@ public class View extends JFrame implements IView {
     private class Batch implements Runnable {
       @Override
       public void run() {
-        showMessage("Processing...", false);
-        try {
-          controller.controlGo(new ByteArrayInputStream(sTextArea.getText().getBytes()));
-          sTextArea.setText("");
-        } catch (Exception error) {
-          showMessage(error.getMessage(), true);
-        }
+        String script = sTextArea.getText();
+        runInBackground(() -> controller.controlGo(new ByteArrayInputStream(script.getBytes())),
+                null, () -> sTextArea.setText(""));
       }
     }
 
@@ -482,11 +772,7 @@ public class View extends JFrame implements IView {
     private class Undo implements Runnable {
       @Override
       public void run() {
-        try {
-          controller.undo();
-        } catch (Exception e) {
-          showMessage(e.getMessage(), true);
-        }
+        runInBackground(controller::undo, null);
       }
     }
 
@@ -496,11 +782,7 @@ public class View extends JFrame implements IView {
     private class Redo implements Runnable {
       @Override
       public void run() {
-        try {
-          controller.redo();
-        } catch (Exception e) {
-          showMessage(e.getMessage(), true);
-        }
+        runInBackground(controller::redo, null);
       }
     }
 
@@ -510,11 +792,7 @@ public class View extends JFrame implements IView {
     private class BlurOp implements Runnable {
       @Override
       public void run() {
-        try {
-          controller.blur();
-        } catch (IllegalStateException error) {
-          showMessage("You must load a picture first", true);
-        }
+        runInBackground(controller::blur, "You must load a picture first");
       }
     }
 
@@ -524,11 +802,30 @@ public class View extends JFrame implements IView {
     private class DitherOp implements Runnable {
       @Override
       public void run() {
-        try {
-          controller.dither();
-        } catch (IllegalStateException error) {
-          showMessage("You must load a picture first", true);
-        }
+        runInBackground(controller::dither, "You must load a picture first");
+      }
+    }
+
+    /**
+     * Class that represents the action performed when user chooses to dither an image with a Bayer
+     * matrix. The user must specify a matrix size through a message box.
+     */
+    private class BayerDitherOp implements Runnable {
+      @Override
+      public void run() {
+        int size = getIntegerInput("What Bayer matrix size do you want (2, 4, 8, ...)?");
+        runInBackground(() -> controller.ditherBayer(size), "You must load a picture first");
+      }
+    }
+
+    /**
+     * Class that represents the action performed when user chooses to dither an image with a blue
+     * noise threshold map.
+     */
+    private class BlueNoiseDitherOp implements Runnable {
+      @Override
+      public void run() {
+        runInBackground(controller::ditherBlueNoise, "You must load a picture first");
       }
     }
 
@@ -538,11 +835,7 @@ public class View extends JFrame implements IView {
     private class GreyOp implements Runnable {
       @Override
       public void run() {
-        try {
-          controller.greyscale();
-        } catch (IllegalStateException error) {
-          showMessage("You must load a picture first", true);
-        }
+        runInBackground(controller::greyscale, "You must load a picture first");
       }
     }
 
@@ -553,15 +846,8 @@ public class View extends JFrame implements IView {
     private class MosaicOp implements Runnable {
       @Override
       public void run() {
-        try {
-          int seed = getIntegerInput("What seed size do you want?");
-          showMessage("Processing...", false);
-          controller.mosaic(seed);
-        } catch (IllegalArgumentException e) {
-          showMessage(e.getMessage(), true);
-        } catch (IllegalStateException e) {
-          showMessage("You must have loaded an image first", true);
-        }
+        int seed = getIntegerInput("What seed size do you want?");
+        runInBackground(() -> controller.mosaic(seed), "You must have loaded an image first");
       }
     }
 
@@ -571,11 +857,7 @@ public class View extends JFrame implements IView {
     private class SepiaOp implements Runnable {
       @Override
       public void run() {
-        try {
-          controller.sepia();
-        } catch (IllegalStateException error) {
-          showMessage("You must load a picture first", true);
-        }
+        runInBackground(controller::sepia, "You must load a picture first");
       }
     }
 
@@ -585,11 +867,7 @@ public class View extends JFrame implements IView {
     private class SharpenOp implements Runnable {
       @Override
       public void run() {
-        try {
-          controller.sharpen();
-        } catch (IllegalStateException error) {
-          showMessage("You must load a picture first", true);
-        }
+        runInBackground(controller::sharpen, "You must load a picture first");
       }
     }
 
@@ -601,11 +879,7 @@ public class View extends JFrame implements IView {
       @Override
       public void run() {
         int size = getIntegerInput("What size squares do you want?");
-        try {
-          controller.checkers(size);
-        } catch (IllegalArgumentException e) {
-          showMessage(e.getMessage(), true);
-        }
+        runInBackground(() -> controller.checkers(size), null);
       }
     }
 
@@ -618,11 +892,7 @@ public class View extends JFrame implements IView {
       public void run() {
         int width = getIntegerInput("What image width do you want?");
         int height = getIntegerInput("What image height do you want?");
-        try {
-          controller.horizRainbow(width, height);
-        } catch (IllegalArgumentException e) {
-          showMessage(e.getMessage(), true);
-        }
+        runInBackground(() -> controller.horizRainbow(width, height), null);
       }
     }
 
@@ -635,18 +905,8 @@ public class View extends JFrame implements IView {
       public void run() {
         int width = getIntegerInput("What image width do you want?");
         int height = getIntegerInput("What image height do you want?");
-        try {
-          controller.vertRainbow(width, height);
-        } catch (IllegalArgumentException e) {
-          showMessage(e.getMessage(), true);
-        }
+        runInBackground(() -> controller.vertRainbow(width, height), null);
       }
     }
   }
 }
-
-
-
-
-
-
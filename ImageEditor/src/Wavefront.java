@@ -0,0 +1,296 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * This class runs per-row image work on several threads when each row depends on the row above
+ * it.  Each thread takes the next row not yet started, and a row may only process a column once
+ * the row above it has finished the columns within a fixed lag to its right.  Rows therefore
+ * advance together as a skewed front, each trailing the one above.  Work such as error diffusion,
+ * where a pixel reads values written by its upper neighbours, produces the same result as
+ * processing the rows one after another.
+ *
+ * <p>Each finished row is reported to the progress of the operation that started the work (see
+ * {@link Progress}), and a cancelled operation stops at its next report.
+ *
+ * <p>The rows run as tasks in the shared pool of {@link RowBands}, so work from several images at
+ * once never uses more threads than the pool has.  Since a row is only taken by a task that is
+ * already running, the row above it is always being processed too, and the work finishes even if
+ * the pool has only one free worker.  A row that catches up with the row above spins briefly and
+ * then parks until that row moves on.
+ */
+public class Wavefront {
+  /**
+   * Number of columns processed between reports of progress to the row below.
+   */
+  private static final int CHUNK = 64;
+  /**
+   * Number of busy checks of the row above before a waiting thread parks.
+   */
+  private static final int SPINS = 100;
+
+  /**
+   * This interface represents work done on part of one row.
+   */
+  public interface Span {
+    /**
+     * Process the columns from startColumn (inclusive) to endColumn (exclusive) of a row.
+     * Columns of a row are always processed from left to right.
+     *
+     * @param row         to be processed
+     * @param startColumn first column to process
+     * @param endColumn   column after the last column to process
+     */
+    void run(int row, int startColumn, int endColumn);
+  }
+
+  /**
+   * Return the number of threads that a given number of rows is processed with.  Work that keeps
+   * state for each row in flight can use this to size its buffers.
+   *
+   * @param rows number of rows to be processed
+   * @return number of threads
+   */
+  public static int count(int rows) {
+    return Math.max(1, Math.min(rows, RowBands.getThreads()));
+  }
+
+  /**
+   * Run the given work on every row, using as many threads as {@link #count(int)}.  Column c of a
+   * row is processed only after the row above has finished column c + lag (or its last column).
+   * Returns once every row has been processed.  If the work throws an exception on any row, that
+   * exception is thrown from this method.
+   *
+   * @param rows    number of rows to be processed
+   * @param columns number of columns in each row
+   * @param lag     number of columns to the right that the row above must be ahead by
+   * @param span    work to run on each row
+   * @throws CancellationException if the calling thread is interrupted while waiting, or if the
+   *                               current operation is cancelled
+   */
+  public static void forEach(int rows, int columns, int lag, Span span)
+          throws CancellationException {
+    forEach(rows, columns, lag, count(rows), span);
+  }
+
+  /**
+   * Run the given work on every row using the given number of tasks.  Rows are taken in order, so
+   * the rows in progress at any time are at most that many consecutive rows.  Work that keeps
+   * state for each row in flight should get the number of tasks from {@link #count(int)} once and
+   * pass it here, so the number cannot change in between.
+   *
+   * @param rows    number of rows to be processed
+   * @param columns number of columns in each row
+   * @param lag     number of columns to the right that the row above must be ahead by
+   * @param threads number of tasks, at least 1 and at most rows
+   * @param span    work to run on each row
+   * @throws CancellationException if the calling thread is interrupted while waiting, or if the
+   *                               current operation is cancelled
+   */
+  public static void forEach(int rows, int columns, int lag, int threads, Span span)
+          throws CancellationException {
+    Progress progress = Progress.current();
+    if (threads == 1) {
+      for (int r = 0; r < rows; r++) {
+        progress.check();
+        span.run(r, 0, columns);
+        progress.advance(1);
+      }
+      return;
+    }
+    Front front = new Front(rows, columns, lag, threads, span, progress);
+    List<Callable<Void>> tasks = new ArrayList<>();
+    for (int i = 0; i < threads; i++) {
+      tasks.add(() -> {
+        front.work();
+        return null;
+      });
+    }
+    try {
+      RowBands.invokeAll(tasks);
+    } finally {
+      // wake any task still parked, such as after the caller was interrupted
+      front.stop(new CancellationException("Operation interrupted."));
+    }
+  }
+
+  /**
+   * This class represents the shared state of one call of forEach.
+   */
+  private static final class Front {
+    /**
+     * Number of rows to be processed.
+     */
+    private final int rows;
+    /**
+     * Number of columns in each row.
+     */
+    private final int columns;
+    /**
+     * Number of columns to the right that the row above must be ahead by.
+     */
+    private final int lag;
+    /**
+     * Work to run on each row.
+     */
+    private final Span span;
+    /**
+     * Progress of the operation that started the work.
+     */
+    private final Progress progress;
+    /**
+     * Next row to be taken.
+     */
+    private final AtomicInteger next = new AtomicInteger();
+    /**
+     * Number of finished columns of each row.
+     */
+    private final AtomicIntegerArray finished;
+    /**
+     * Thread parked on the row above, for each row in flight by row modulo the number of tasks.
+     */
+    private final AtomicReferenceArray<Thread> waiters;
+    /**
+     * First exception thrown by any task.
+     */
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+    /**
+     * Construct the state of a call.
+     *
+     * @param rows     number of rows to be processed
+     * @param columns  number of columns in each row
+     * @param lag      number of columns to the right that the row above must be ahead by
+     * @param threads  number of tasks
+     * @param span     work to run on each row
+     * @param progress of the operation that started the work
+     */
+    private Front(int rows, int columns, int lag, int threads, Span span, Progress progress) {
+      this.rows = rows;
+      this.columns = columns;
+      this.lag = lag;
+      this.span = span;
+      this.progress = progress;
+      this.finished = new AtomicIntegerArray(rows);
+      this.waiters = new AtomicReferenceArray<>(threads);
+    }
+
+    /**
+     * Take and process rows until there are none left or any task has failed.
+     *
+     * @throws CancellationException if the operation is cancelled
+     */
+    private void work() throws CancellationException {
+      try {
+        for (int r = next.getAndIncrement(); r < rows && failure.get() == null;
+             r = next.getAndIncrement()) {
+          runRow(r);
+        }
+      } catch (RuntimeException | Error e) {
+        stop(e);
+        throw e;
+      }
+    }
+
+    /**
+     * Record the first failure and wake every parked task so that it can return.
+     *
+     * @param cause of the failure
+     */
+    private void stop(Throwable cause) {
+      failure.compareAndSet(null, cause);
+      for (int i = 0; i < waiters.length(); i++) {
+        Thread waiter = waiters.get(i);
+        if (waiter != null) {
+          LockSupport.unpark(waiter);
+        }
+      }
+    }
+
+    /**
+     * Process one row, waiting on the row above as needed and waking the row below as it moves on.
+     * Returns early if another task has failed.
+     *
+     * @param row to be processed
+     * @throws CancellationException if the operation is cancelled
+     */
+    private void runRow(int row) throws CancellationException {
+      int done = 0;
+      while (done < columns) {
+        int end = ready(row);
+        if (end <= done) {
+          if (!await(row, done)) {
+            return;
+          }
+          continue;
+        }
+        end = Math.min(end, done + CHUNK);
+        progress.check();
+        span.run(row, done, end);
+        done = end;
+        finished.set(row, done);
+        if (row + 1 < rows) {
+          Thread waiter = waiters.get((row + 1) % waiters.length());
+          if (waiter != null) {
+            LockSupport.unpark(waiter);
+          }
+        }
+      }
+      progress.advance(1);
+    }
+
+    /**
+     * Return the column that a row may process up to, given how far the row above has got.
+     *
+     * @param row being processed
+     * @return column after the last column that may be processed
+     */
+    private int ready(int row) {
+      if (row == 0) {
+        return columns;
+      }
+      int above = finished.get(row - 1);
+      return above == columns ? columns : above - lag;
+    }
+
+    /**
+     * Wait until a row may process more columns, spinning briefly and then parking.
+     *
+     * @param row  being processed
+     * @param done number of columns of the row already processed
+     * @return false if another task has failed, true once the row may go on
+     * @throws CancellationException if the waiting thread is interrupted
+     */
+    private boolean await(int row, int done) throws CancellationException {
+      for (int spins = 0; spins < SPINS; spins++) {
+        if (failure.get() != null) {
+          return false;
+        }
+        if (ready(row) > done) {
+          return true;
+        }
+        Thread.onSpinWait();
+      }
+      int slot = row % waiters.length();
+      waiters.set(slot, Thread.currentThread());
+      // the row above reads the slot after each step, so a step made after this check wakes us
+      try {
+        while (failure.get() == null && ready(row) <= done) {
+          if (Thread.currentThread().isInterrupted()) {
+            throw new CancellationException("Operation interrupted.");
+          }
+          LockSupport.park(this);
+        }
+      } finally {
+        waiters.set(slot, null);
+      }
+      return failure.get() == null;
+    }
+  }
+}